@@ -0,0 +1,151 @@
+package com.mz.example.kafka;
+
+import com.mz.example.neo4j.Neo4jRoutingTable;
+import com.mz.example.neo4j.Neo4jService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor.Subscription;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RegionalAssignor} with neo4j service returning fixed routing table. Half of the members are in
+ * same data center as neo4j leader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegionalAssignorBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int members;
+    @Param({"100", "1000", "5000"})
+    public int partitions;
+    @Param({"1", "10"})
+    public int topics;
+    @Param({"3", "30"})
+    public int eligibleServers;
+    @Param({"true", "false"})
+    public boolean compactUserData;
+
+    private RegionalAssignor assignor;
+    private Map<String, Integer> partitionsPerTopic;
+    private Map<String, Subscription> subscriptions;
+    private List<String> sameDCServers;
+    private Map<String, Integer> latencyMicros;
+    private ByteBuffer userData;
+
+    @Setup
+    public void setup() {
+        List<String> region1 = servers(0);
+        List<String> region2 = servers(eligibleServers);
+        List<String> allServers = new ArrayList<>(region1);
+        allServers.addAll(region2);
+        sameDCServers = region1;
+        Neo4jRoutingTable routingTable = new Neo4jRoutingTable(300, Arrays.asList(
+                new Neo4jRoutingTable.Server(Collections.singletonList(region1.get(0)), Neo4jRoutingTable.WRITE_ROLE),
+                new Neo4jRoutingTable.Server(region2, Neo4jRoutingTable.READ_ROLE),
+                new Neo4jRoutingTable.Server(allServers, Neo4jRoutingTable.ROUTE_ROLE)));
+
+        assignor = new RegionalAssignor();
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(KafkaConfiguration.NEO4J_SERVICE_PROPERTY, new StubNeo4jService(routingTable, sameDCServers));
+        configs.put(KafkaConfiguration.METER_REGISTRY_PROPERTY, new SimpleMeterRegistry());
+        configs.put(KafkaConfiguration.COMPACT_USER_DATA_PROPERTY, compactUserData);
+        configs.put(KafkaConfiguration.LATENCY_PROBE_INTERVAL_MS_PROPERTY, 0);
+        assignor.configure(configs);
+        assignor.codec().topologyChanged(ServerTopology.of(routingTable));
+        assignor.codec().topologiesAcknowledged(assignor.codec().encodeKnownTopologies());
+
+        partitionsPerTopic = new HashMap<>();
+        List<String> topicNames = new ArrayList<>();
+        for (int topic = 0; topic < topics; topic++) {
+            String name = "topic-" + topic;
+            topicNames.add(name);
+            partitionsPerTopic.put(name, Math.max(1, partitions / topics));
+        }
+        subscriptions = new HashMap<>();
+        for (int member = 0; member < members; member++) {
+            boolean inRegion1 = member % 2 == 0;
+            ByteBuffer memberData = assignor.serializeConsumerData(inRegion1 ? region1 : region2,
+                    latencies(inRegion1 ? region1 : region2, inRegion1 ? region2 : region1, member));
+            subscriptions.put("member-" + member, new Subscription(topicNames, memberData));
+        }
+        latencyMicros = latencies(region1, region2, 0);
+        userData = assignor.serializeConsumerData(region1, latencyMicros);
+    }
+
+    @TearDown
+    public void tearDown() {
+        assignor.close();
+    }
+
+    @Benchmark
+    public Map<String, List<TopicPartition>> assign() {
+        return assignor.assign(partitionsPerTopic, subscriptions);
+    }
+
+    @Benchmark
+    public ByteBuffer serializeConsumerData() {
+        return assignor.serializeConsumerData(sameDCServers, latencyMicros);
+    }
+
+    @Benchmark
+    public MemberLocality deserializeConsumerData() {
+        return assignor.deserializeConsumerData(userData);
+    }
+
+    /**
+     * Around 1 ms to servers in same region and 40 ms to other region, slightly different for each member.
+     */
+    private Map<String, Integer> latencies(List<String> local, List<String> remote, int member) {
+        Map<String, Integer> ret = new HashMap<>();
+        local.forEach(server -> ret.put(server, 1000 + member % 7 * 30));
+        remote.forEach(server -> ret.put(server, 40000 + member % 7 * 30));
+        return ret;
+    }
+
+    private List<String> servers(int first) {
+        List<String> ret = new ArrayList<>();
+        for (int server = first; server < first + eligibleServers; server++) {
+            ret.add("neo4j-" + server + ".example.com:7687");
+        }
+        return ret;
+    }
+
+    static class StubNeo4jService extends Neo4jService {
+        private final Neo4jRoutingTable routingTable;
+        private final List<String> sameDCServers;
+
+        StubNeo4jService(Neo4jRoutingTable routingTable, List<String> sameDCServers) {
+            this.routingTable = routingTable;
+            this.sameDCServers = sameDCServers;
+        }
+
+        @Override
+        public Neo4jRoutingTable getCurrentRoutingTable() {
+            return routingTable;
+        }
+
+        @Override
+        public Neo4jRoutingTable getCachedRoutingTable(String database, String policy) {
+            return routingTable;
+        }
+
+        @Override
+        public Neo4jRoutingTable getFreshRoutingTable(String database, String policy) {
+            return routingTable;
+        }
+
+        @Override
+        public List<String> getSameDCServers() {
+            return sameDCServers;
+        }
+    }
+}
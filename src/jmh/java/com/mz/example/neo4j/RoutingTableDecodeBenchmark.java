@@ -0,0 +1,60 @@
+package com.mz.example.neo4j;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.internal.InternalRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding of <code>dbms.cluster.routing.getRoutingTable</code> result and leader lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingTableDecodeBenchmark {
+
+    @Param({"3", "6", "30"})
+    public int servers;
+
+    private Record record;
+    private Neo4jRoutingTable routingTable;
+
+    @Setup
+    public void setup() {
+        List<String> addresses = new ArrayList<>();
+        for (int server = 0; server < servers; server++) {
+            addresses.add("neo4j-" + server + ".example.com:7687");
+        }
+        List<Map<String, Object>> serversValue = Arrays.asList(
+                server(addresses.subList(0, 1), Neo4jRoutingTable.WRITE_ROLE),
+                server(addresses.subList(1, addresses.size()), Neo4jRoutingTable.READ_ROLE),
+                server(addresses, Neo4jRoutingTable.ROUTE_ROLE));
+        record = new InternalRecord(Arrays.asList("ttl", "servers"),
+                new Value[]{Values.value(300), Values.value(serversValue)});
+        routingTable = Neo4jRoutingTable.fromRecord(record);
+    }
+
+    @Benchmark
+    public Neo4jRoutingTable decode() {
+        return Neo4jRoutingTable.fromRecord(record);
+    }
+
+    @Benchmark
+    public Optional<String> leaderAddress() {
+        return routingTable.getLeaderAddress();
+    }
+
+    private static Map<String, Object> server(List<String> addresses, String role) {
+        Map<String, Object> server = new HashMap<>();
+        server.put("addresses", addresses);
+        server.put("role", role);
+        return server;
+    }
+}
@@ -0,0 +1,98 @@
+package com.mz.example.kafka;
+
+import io.micrometer.core.instrument.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters recorded by regional assignors, tagged with assignor name.
+ */
+class AssignorMetrics {
+
+    static final String FALLBACK_LEADER_UNKNOWN = "leader_unknown";
+    static final String FALLBACK_NO_LEADER = "no_leader";
+    static final String FALLBACK_NO_ELIGIBLE_CONSUMERS = "no_eligible_consumers";
+    static final String ELIGIBILITY_LATENCY = "latency";
+    static final String ELIGIBILITY_STATIC = "static";
+
+    private final MeterRegistry registry;
+    private final String assignor;
+    private final Timer assignmentDuration;
+    private final AtomicInteger totalMembers = new AtomicInteger();
+    private final AtomicInteger eligibleMembers = new AtomicInteger();
+    private final Counter userDataDecodeFailures;
+    private final DistributionSummary movedPartitions;
+    private final DistributionSummary userDataSize;
+
+    AssignorMetrics(MeterRegistry registry, String assignor) {
+        this.registry = registry;
+        this.assignor = assignor;
+        this.assignmentDuration = Timer.builder("kafka.assignment.duration")
+                .tag("assignor", assignor)
+                .register(registry);
+        Gauge.builder("kafka.assignment.members", totalMembers, AtomicInteger::get)
+                .tags("assignor", assignor, "type", "total")
+                .register(registry);
+        Gauge.builder("kafka.assignment.members", eligibleMembers, AtomicInteger::get)
+                .tags("assignor", assignor, "type", "eligible")
+                .register(registry);
+        this.userDataDecodeFailures = Counter.builder("kafka.assignment.user.data.decode.failures")
+                .tag("assignor", assignor)
+                .register(registry);
+        this.movedPartitions = DistributionSummary.builder("kafka.assignment.partitions.moved")
+                .tag("assignor", assignor)
+                .register(registry);
+        this.userDataSize = DistributionSummary.builder("kafka.assignment.user.data.size")
+                .baseUnit("bytes")
+                .tag("assignor", assignor)
+                .register(registry);
+    }
+
+    Timer.Sample startAssignment() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * @return assignment duration in milliseconds
+     */
+    long stopAssignment(Timer.Sample sample) {
+        return TimeUnit.NANOSECONDS.toMillis(sample.stop(assignmentDuration));
+    }
+
+    void members(int total, int eligible) {
+        totalMembers.set(total);
+        eligibleMembers.set(eligible);
+    }
+
+    void leaderLookup(String database, Neo4jLeaderLookup.Path path) {
+        registry.counter("kafka.assignment.leader.lookup", "assignor", assignor, "database", database,
+                "path", path.name().toLowerCase()).increment();
+    }
+
+    /**
+     * Assignment done on all consumers instead of consumers in leader's data center.
+     */
+    void fallback(String reason) {
+        registry.counter("kafka.assignment.fallback", "assignor", assignor, "reason", reason).increment();
+    }
+
+    /**
+     * How consumers eligible for the leader were chosen - by measured latency or by neo4j.sameDCServers.
+     */
+    void eligibility(String basis) {
+        registry.counter("kafka.assignment.eligibility", "assignor", assignor, "basis", basis).increment();
+    }
+
+    void userDataDecodeFailure() {
+        userDataDecodeFailures.increment();
+    }
+
+    void userDataSize(int bytes) {
+        userDataSize.record(bytes);
+    }
+
+    void partitionsMoved(int moved) {
+        movedPartitions.record(moved);
+    }
+}
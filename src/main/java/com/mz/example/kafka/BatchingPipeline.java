@@ -0,0 +1,263 @@
+package com.mz.example.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Groups polled records into batches bounded by size and linger time and writes each batch with single call to
+ * writer. Up to <code>maxInFlightBatches</code> batches are written concurrently. Offsets are released for commit
+ * only for batches that were written, in the order records were polled.<br/>
+ * When batch write fails all batches after it are dropped and offsets to rewind to are returned, so records are
+ * consumed again - delivery is at least once.<br/>
+ * Batch can hold records of many partitions, so drain waits for every batch with records of drained partitions.
+ */
+@Slf4j
+class BatchingPipeline implements IngestPipeline {
+
+    private final Function<List<Map<String, Object>>, CompletionStage<Void>> writer;
+    private final int batchSize;
+    private final long lingerMs;
+    private final int maxInFlightBatches;
+    private final Deque<Batch> inFlight = new ArrayDeque<>();
+    //offsets of written batches not yet returned by takeWritten
+    private final Map<TopicPartition, OffsetAndMetadata> written = new HashMap<>();
+    private Batch current;
+    private volatile long recordsInFlight;
+
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong batchesFailed = new AtomicLong();
+
+    BatchingPipeline(Function<List<Map<String, Object>>, CompletionStage<Void>> writer,
+                     int batchSize, long lingerMs, int maxInFlightBatches) {
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    @Override
+    public void add(ConsumerRecord<byte[], byte[]> record) {
+        if(current == null) {
+            current = new Batch();
+        }
+        current.add(record);
+        if(current.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends current batch if it waits longer than linger time.
+     */
+    @Override
+    public void afterPoll(PartitionPauses pauses) {
+        if(current != null && System.currentTimeMillis() - current.createdAt >= lingerMs) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends current batch regardless of its size. Blocks while maximum number of batches is in flight.
+     */
+    void flush() {
+        if(current == null) {
+            return;
+        }
+        while (inFlight.size() >= maxInFlightBatches) {
+            Batch head = inFlight.peekFirst();
+            head.result.exceptionally(ex -> null).join();
+            if(head.result.isCompletedExceptionally()) {
+                //failure is reported by takeWritten
+                break;
+            }
+            releaseHead();
+        }
+        Batch batch = current;
+        current = null;
+        batch.result = writer.apply(batch.rows).toCompletableFuture();
+        inFlight.addLast(batch);
+        recordsInFlight += batch.size();
+    }
+
+    @Override
+    public long maxPollWaitMs(long idlePollMs) {
+        if(current != null) {
+            return Math.max(0, lingerMs - (System.currentTimeMillis() - current.createdAt));
+        }
+        return inFlight.isEmpty() ? idlePollMs : Math.min(idlePollMs, lingerMs);
+    }
+
+    /**
+     * Collects offsets of batches written so far. Stops on first batch still in flight.
+     */
+    @Override
+    public Progress takeWritten() {
+        Map<TopicPartition, Long> rewind = Collections.emptyMap();
+        while (!inFlight.isEmpty() && inFlight.peekFirst().result.isDone()) {
+            if(inFlight.peekFirst().result.isCompletedExceptionally()) {
+                rewind = rewind(inFlight.peekFirst());
+                break;
+            }
+            releaseHead();
+        }
+        Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>(written);
+        written.clear();
+        return new Progress(commit, rewind);
+    }
+
+    /**
+     * Sends current batch and waits for batches with records of given partitions to be written. Batches which were not
+     * written before the deadline, and all batches after them, are no longer tracked - offsets to rewind to are
+     * returned for their other partitions, so those records are consumed again.
+     */
+    @Override
+    public Progress drain(Collection<TopicPartition> partitions, long timeoutMs) {
+        flush();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Batch batch : inFlight) {
+            if(!batch.containsAny(partitions)) {
+                continue;
+            }
+            try {
+                batch.result.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                log.warn("Batches with records of " + partitions + " were not written within " + timeoutMs + " ms.");
+                break;
+            } catch (Exception ex) {
+                //reported by takeWritten or rewound below
+                break;
+            }
+        }
+        Progress written = takeWritten();
+        Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>(written.getCommit());
+        Map<TopicPartition, Long> rewind = new HashMap<>(written.getRewind());
+        boolean abandoned = false;
+        Iterator<Batch> batches = inFlight.iterator();
+        while (batches.hasNext()) {
+            Batch batch = batches.next();
+            abandoned = abandoned || batch.containsAny(partitions)
+                    && (!batch.result.isDone() || batch.result.isCompletedExceptionally());
+            if(abandoned) {
+                batch.firstOffsets.forEach((tp, offset) -> {
+                    if(!partitions.contains(tp)) {
+                        rewind.merge(tp, offset, Math::min);
+                    }
+                });
+                batches.remove();
+                recordsInFlight -= batch.size();
+            } else {
+                //written, but waits for batch before it to be released
+                partitions.forEach(tp -> {
+                    OffsetAndMetadata next = batch.nextOffsets.get(tp);
+                    if(next != null) {
+                        commit.put(tp, next);
+                    }
+                });
+                batch.forget(partitions);
+            }
+        }
+        return new Progress(commit, rewind);
+    }
+
+    /**
+     * Drops pending work of given partitions without committing it. Records of those partitions already sent are
+     * still written, but their offsets are not tracked.
+     */
+    @Override
+    public void drop(Collection<TopicPartition> partitions) {
+        if(current != null) {
+            current.forget(partitions);
+            current.rows.removeIf(row -> partitions.contains(
+                    new TopicPartition((String) row.get("topic"), (Integer) row.get("partition"))));
+            if(current.rows.isEmpty()) {
+                current = null;
+            }
+        }
+        inFlight.forEach(batch -> batch.forget(partitions));
+        written.keySet().removeAll(partitions);
+    }
+
+    @Override
+    public Stats getStats() {
+        long written = recordsWritten.get();
+        long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+        return new Stats(written, batchesWritten.get(), batchesFailed.get(), recordsInFlight,
+                written * 1000 / elapsed);
+    }
+
+    private void releaseHead() {
+        Batch head = inFlight.pollFirst();
+        written.putAll(head.nextOffsets);
+        recordsInFlight -= head.size();
+        recordsWritten.addAndGet(head.rows.size());
+        batchesWritten.incrementAndGet();
+    }
+
+    private Map<TopicPartition, Long> rewind(Batch failed) {
+        log.error("Writing batch of " + failed.size() + " records failed. Will consume them again.",
+                unwrap(failed.result));
+        batchesFailed.incrementAndGet();
+        Map<TopicPartition, Long> rewind = new HashMap<>();
+        List<Batch> dropped = new ArrayList<>(inFlight);
+        if(current != null) {
+            dropped.add(current);
+        }
+        dropped.forEach(batch -> batch.firstOffsets.forEach((tp, offset) -> rewind.merge(tp, offset, Math::min)));
+        current = null;
+        inFlight.clear();
+        recordsInFlight = 0;
+        return rewind;
+    }
+
+    private static Throwable unwrap(CompletableFuture<Void> result) {
+        try {
+            result.join();
+            return null;
+        } catch (Exception ex) {
+            return ex.getCause() != null ? ex.getCause() : ex;
+        }
+    }
+
+    private static class Batch {
+        private final long createdAt = System.currentTimeMillis();
+        private final List<Map<String, Object>> rows = new ArrayList<>();
+        private final Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        private final Map<TopicPartition, OffsetAndMetadata> nextOffsets = new HashMap<>();
+        private CompletableFuture<Void> result;
+
+        private void add(ConsumerRecord<byte[], byte[]> record) {
+            rows.add(IngestPipeline.toRow(record));
+            TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+            firstOffsets.putIfAbsent(tp, record.offset());
+            nextOffsets.put(tp, new OffsetAndMetadata(record.offset() + 1));
+        }
+
+        private int size() {
+            return rows.size();
+        }
+
+        private boolean containsAny(Collection<TopicPartition> partitions) {
+            return partitions.stream().anyMatch(firstOffsets::containsKey);
+        }
+
+        /**
+         * Offsets of given partitions are no longer committed or rewound when batch finishes.
+         */
+        private void forget(Collection<TopicPartition> partitions) {
+            firstOffsets.keySet().removeAll(partitions);
+            nextOffsets.keySet().removeAll(partitions);
+        }
+    }
+}
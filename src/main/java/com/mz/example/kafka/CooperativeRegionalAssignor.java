@@ -0,0 +1,57 @@
+package com.mz.example.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+
+/**
+ * {@link RegionalAssignor} working with cooperative rebalance protocol. Consumers keep partitions they own as long as
+ * they are eligible to write to current neo4j leader and within their balanced quota, so only partitions that need to
+ * move to leader's data center are revoked. Other consumers keep processing during rebalance.<br/>
+ * Partition moving between consumers is first only revoked from current owner. Kafka consumer triggers follow up
+ * rebalance after revoking partitions, and partition is assigned to its new owner then.
+ */
+@Slf4j
+public class CooperativeRegionalAssignor extends RegionalAssignor {
+
+    private static final String COOPERATIVE_REGIONAL_ASSIGNOR_NAME = "cooperative-regional-assignor";
+
+    @Override
+    public String name() {
+        return COOPERATIVE_REGIONAL_ASSIGNOR_NAME;
+    }
+
+    /**
+     * Supports eager protocol as well so it can be added next to {@link RegionalAssignor} during rolling upgrade.
+     */
+    @Override
+    public List<RebalanceProtocol> supportedProtocols() {
+        return Arrays.asList(RebalanceProtocol.COOPERATIVE, RebalanceProtocol.EAGER);
+    }
+
+    @Override
+    protected Map<String, List<TopicPartition>> assignEligible(Map<String, Integer> partitionsPerTopic,
+                                                                Map<String, Subscription> eligible,
+                                                                Map<String, Subscription> subscriptions) {
+        Map<TopicPartition, String> currentOwners = new HashMap<>();
+        subscriptions.forEach((memberId, subscription) ->
+                subscription.ownedPartitions().forEach(tp -> currentOwners.put(tp, memberId)));
+
+        StickyPlacement.Result placement = StickyPlacement.place(partitionsPerTopic, eligible, currentOwners);
+        int revoked = 0;
+        for (Map.Entry<String, List<TopicPartition>> memberAssignment : placement.getAssignment().entrySet()) {
+            Iterator<TopicPartition> partitions = memberAssignment.getValue().iterator();
+            while (partitions.hasNext()) {
+                String owner = currentOwners.get(partitions.next());
+                if(owner != null && !owner.equals(memberAssignment.getKey())) {
+                    partitions.remove();
+                    revoked++;
+                }
+            }
+        }
+        metrics().partitionsMoved(revoked);
+        log.info("Revoking " + revoked + " partitions, they will be assigned in follow up rebalance.");
+        return placement.getAssignment();
+    }
+}
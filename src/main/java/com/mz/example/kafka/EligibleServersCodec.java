@@ -0,0 +1,253 @@
+package com.mz.example.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.protocol.types.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Encodes neo4j servers consumer is eligible to write to, sent in subscription user data. Two versions are supported:
+ * <ul>
+ *     <li>{@link #LEGACY_VERSION} - list of server addresses. This is the format used before versioning was
+ *     introduced, it always starts with zero byte as array length is written as int32</li>
+ *     <li>{@link #COMPACT_VERSION} - version byte, {@link ServerTopology} fingerprint and bitset of server indexes
+ *     within the topology. Used when all servers are part of current topology</li>
+ *     <li>{@link #COMPACT_WITH_LATENCY_VERSION} - same as compact version followed by latency in microseconds to each
+ *     server of the topology, -1 when server was not reached. Used when there are any latency measurements</li>
+ * </ul>
+ * Compact versions are sent only once assignment leader acknowledged it knows consumer's topology - leader returns
+ * fingerprints of topologies it knows in assignment user data. Until then, eg.: right after leader starts, servers are
+ * sent in legacy format, so consumer does not lose eligibility because its compact payload can't be decoded.<br/>
+ * Assignment leader decodes each distinct payload once - consumers within same data center send same bytes, so the
+ * decoded servers are cached by payload content. Latency is rounded to {@link #LATENCY_RESOLUTION_MICROS} so small
+ * differences in measurements do not make payloads distinct.
+ */
+@Slf4j
+class EligibleServersCodec {
+
+    static final byte LEGACY_VERSION = 0;
+    static final byte COMPACT_VERSION = 1;
+    static final byte COMPACT_WITH_LATENCY_VERSION = 2;
+    static final int LATENCY_RESOLUTION_MICROS = 100;
+    private static final int UNKNOWN_LATENCY = -1;
+    private static final String ELIGIBLE_NEO4J_LEADERS_KEY_NAME = "eligible-neo4j-leaders";
+    private static final String TOPOLOGY_FINGERPRINT_KEY_NAME = "topology-fingerprint";
+    private static final String ELIGIBLE_SERVERS_KEY_NAME = "eligible-servers";
+    private static final String LATENCY_MICROS_KEY_NAME = "latency-micros";
+    private static final String KNOWN_TOPOLOGIES_KEY_NAME = "known-topologies";
+    private static final Schema LEGACY_USER_DATA = new Schema(
+            new Field(ELIGIBLE_NEO4J_LEADERS_KEY_NAME, new ArrayOf(Type.STRING))
+    );
+    private static final Schema COMPACT_USER_DATA = new Schema(
+            new Field(TOPOLOGY_FINGERPRINT_KEY_NAME, Type.INT32),
+            new Field(ELIGIBLE_SERVERS_KEY_NAME, Type.COMPACT_BYTES)
+    );
+    private static final Schema COMPACT_WITH_LATENCY_USER_DATA = new Schema(
+            new Field(TOPOLOGY_FINGERPRINT_KEY_NAME, Type.INT32),
+            new Field(ELIGIBLE_SERVERS_KEY_NAME, Type.COMPACT_BYTES),
+            new Field(LATENCY_MICROS_KEY_NAME, new ArrayOf(Type.VARINT))
+    );
+    private static final Schema KNOWN_TOPOLOGIES = new Schema(
+            new Field(KNOWN_TOPOLOGIES_KEY_NAME, new ArrayOf(Type.INT32))
+    );
+    private static final int MAX_KNOWN_TOPOLOGIES = 8;
+    private static final int MAX_DECODED_PAYLOADS = 1024;
+
+    private final boolean compact;
+    private volatile ServerTopology topology;
+    //consumers may still send servers indexed within previous topology
+    private final Map<Integer, ServerTopology> knownTopologies = new LruMap<>(MAX_KNOWN_TOPOLOGIES);
+    private final Map<ByteBuffer, MemberLocality> decoded = new LruMap<>(MAX_DECODED_PAYLOADS);
+    //fingerprints of topologies last assignment leader could decode
+    private volatile Set<Integer> acknowledged = Collections.emptySet();
+
+    /**
+     * @param compact when false servers are always encoded in legacy format, eg.: during rolling upgrade from
+     *                version that does not understand compact format
+     */
+    EligibleServersCodec(boolean compact) {
+        this.compact = compact;
+    }
+
+    ServerTopology getTopology() {
+        return topology;
+    }
+
+    synchronized void topologyChanged(ServerTopology topology) {
+        if(!topology.equals(this.topology)) {
+            log.info("Neo4j server topology changed: " + topology);
+            knownTopologies.put(topology.getFingerprint(), topology);
+            this.topology = topology;
+        }
+    }
+
+    ByteBuffer encode(Collection<String> servers) {
+        return encode(servers, Collections.emptyMap());
+    }
+
+    /**
+     * @param latencyMicros latency to servers, it is not sent when servers are encoded in legacy format
+     */
+    ByteBuffer encode(Collection<String> servers, Map<String, Integer> latencyMicros) {
+        ServerTopology current = topology;
+        if(compact && current != null && acknowledged.contains(current.getFingerprint())) {
+            BitSet indexes = new BitSet(current.size());
+            for (String server : servers) {
+                int index = current.indexOf(server);
+                if(index < 0) {
+                    log.debug("Server " + server + " is not part of " + current + ". Using legacy user data format.");
+                    return encodeLegacy(servers);
+                }
+                indexes.set(index);
+            }
+            Schema schema = latencyMicros.isEmpty() ? COMPACT_USER_DATA : COMPACT_WITH_LATENCY_USER_DATA;
+            Struct struct = new Struct(schema);
+            struct.set(TOPOLOGY_FINGERPRINT_KEY_NAME, current.getFingerprint());
+            struct.set(ELIGIBLE_SERVERS_KEY_NAME, ByteBuffer.wrap(indexes.toByteArray()));
+            if(!latencyMicros.isEmpty()) {
+                Object[] latencies = new Object[current.size()];
+                for (int i = 0; i < current.size(); i++) {
+                    Integer latency = latencyMicros.get(current.get(i));
+                    latencies[i] = latency == null
+                            ? UNKNOWN_LATENCY
+                            : Math.round((float) latency / LATENCY_RESOLUTION_MICROS) * LATENCY_RESOLUTION_MICROS;
+                }
+                struct.set(LATENCY_MICROS_KEY_NAME, latencies);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(1 + schema.sizeOf(struct));
+            buffer.put(latencyMicros.isEmpty() ? COMPACT_VERSION : COMPACT_WITH_LATENCY_VERSION);
+            schema.write(buffer, struct);
+            buffer.flip();
+            return buffer;
+        }
+        return encodeLegacy(servers);
+    }
+
+    private static ByteBuffer encodeLegacy(Collection<String> servers) {
+        Struct struct = new Struct(LEGACY_USER_DATA);
+        struct.set(ELIGIBLE_NEO4J_LEADERS_KEY_NAME, servers.toArray());
+        ByteBuffer buffer = ByteBuffer.allocate(LEGACY_USER_DATA.sizeOf(struct));
+        LEGACY_USER_DATA.write(buffer, struct);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return fingerprints of topologies this assignment leader knows, sent to consumers in assignment user data
+     */
+    synchronized ByteBuffer encodeKnownTopologies() {
+        Struct struct = new Struct(KNOWN_TOPOLOGIES);
+        struct.set(KNOWN_TOPOLOGIES_KEY_NAME, knownTopologies.keySet().toArray());
+        ByteBuffer buffer = ByteBuffer.allocate(KNOWN_TOPOLOGIES.sizeOf(struct));
+        KNOWN_TOPOLOGIES.write(buffer, struct);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param knownTopologies assignment user data received from assignment leader, compact format is not used when it
+     *                        is missing, eg.: leader runs version that does not send it
+     */
+    void topologiesAcknowledged(ByteBuffer knownTopologies) {
+        Set<Integer> fingerprints = new HashSet<>();
+        if(knownTopologies != null && knownTopologies.hasRemaining()) {
+            try {
+                for (Object fingerprint : KNOWN_TOPOLOGIES.read(knownTopologies.duplicate())
+                        .getArray(KNOWN_TOPOLOGIES_KEY_NAME)) {
+                    fingerprints.add((Integer) fingerprint);
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Unable to read neo4j server topologies known by assignment leader.", ex);
+            }
+        }
+        acknowledged = Collections.unmodifiableSet(fingerprints);
+    }
+
+    /**
+     * Does not change position of given buffer.
+     *
+     * @throws IllegalArgumentException when payload can't be decoded, eg.: it was encoded against unknown topology
+     */
+    MemberLocality decode(ByteBuffer payload) {
+        synchronized (decoded) {
+            MemberLocality locality = decoded.get(payload.duplicate());
+            if(locality != null) {
+                return locality;
+            }
+        }
+        MemberLocality locality = decodeUncached(payload.duplicate());
+        ByteBuffer key = ByteBuffer.allocate(payload.remaining());
+        key.put(payload.duplicate()).flip();
+        synchronized (decoded) {
+            decoded.put(key, locality);
+        }
+        return locality;
+    }
+
+    private MemberLocality decodeUncached(ByteBuffer payload) {
+        if(!payload.hasRemaining()) {
+            throw new IllegalArgumentException("Empty user data.");
+        }
+        byte version = payload.get(payload.position());
+        switch (version) {
+            case LEGACY_VERSION:
+                Set<String> servers = new LinkedHashSet<>();
+                for (Object server : LEGACY_USER_DATA.read(payload).getArray(ELIGIBLE_NEO4J_LEADERS_KEY_NAME)) {
+                    servers.add((String) server);
+                }
+                return new MemberLocality(Collections.unmodifiableSet(servers), Collections.emptyMap());
+            case COMPACT_VERSION:
+            case COMPACT_WITH_LATENCY_VERSION:
+                payload.get();
+                Struct struct = (version == COMPACT_VERSION ? COMPACT_USER_DATA : COMPACT_WITH_LATENCY_USER_DATA)
+                        .read(payload);
+                ServerTopology indexedBy = knownTopology(struct.getInt(TOPOLOGY_FINGERPRINT_KEY_NAME));
+                BitSet indexes = BitSet.valueOf(struct.getBytes(ELIGIBLE_SERVERS_KEY_NAME));
+                if(indexes.length() > indexedBy.size()) {
+                    throw new IllegalArgumentException("Server index out of " + indexedBy);
+                }
+                Set<String> indexed = new LinkedHashSet<>();
+                indexes.stream().forEach(index -> indexed.add(indexedBy.get(index)));
+                Map<String, Integer> latencyMicros = new HashMap<>();
+                if(version == COMPACT_WITH_LATENCY_VERSION) {
+                    Object[] latencies = struct.getArray(LATENCY_MICROS_KEY_NAME);
+                    if(latencies.length != indexedBy.size()) {
+                        throw new IllegalArgumentException("Latency not sent for each server of " + indexedBy);
+                    }
+                    for (int i = 0; i < latencies.length; i++) {
+                        if((Integer) latencies[i] != UNKNOWN_LATENCY) {
+                            latencyMicros.put(indexedBy.get(i), (Integer) latencies[i]);
+                        }
+                    }
+                }
+                return new MemberLocality(Collections.unmodifiableSet(indexed),
+                        Collections.unmodifiableMap(latencyMicros));
+            default:
+                throw new IllegalArgumentException("Unsupported user data version: " + version);
+        }
+    }
+
+    private synchronized ServerTopology knownTopology(int fingerprint) {
+        ServerTopology known = knownTopologies.get(fingerprint);
+        if(known == null) {
+            throw new IllegalArgumentException("Unknown neo4j server topology fingerprint: " + fingerprint);
+        }
+        return known;
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        private LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
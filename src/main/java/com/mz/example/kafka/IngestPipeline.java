@@ -0,0 +1,79 @@
+package com.mz.example.kafka;
+
+import lombok.Value;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes polled records to neo4j and tells polling thread which offsets can be committed.<br/>
+ * <b>NOTE:</b> all methods except {@link #getStats()} are called only from polling thread.
+ */
+interface IngestPipeline extends AutoCloseable {
+
+    void add(ConsumerRecord<byte[], byte[]> record);
+
+    /**
+     * Called after records from each poll were added.
+     *
+     * @param pauses can be used to pause or resume partitions
+     */
+    void afterPoll(PartitionPauses pauses);
+
+    /**
+     * @return time poll may wait before pipeline needs attention again
+     */
+    long maxPollWaitMs(long idlePollMs);
+
+    /**
+     * Collects offsets of records written so far.
+     */
+    Progress takeWritten();
+
+    /**
+     * Waits for records of given partitions to be written and stops processing them.
+     */
+    Progress drain(Collection<TopicPartition> partitions, long timeoutMs);
+
+    /**
+     * Stops processing given partitions without waiting for records in flight.
+     */
+    void drop(Collection<TopicPartition> partitions);
+
+    Stats getStats();
+
+    @Override
+    default void close() {
+    }
+
+    static Map<String, Object> toRow(ConsumerRecord<byte[], byte[]> record) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("topic", record.topic());
+        row.put("partition", record.partition());
+        row.put("offset", record.offset());
+        row.put("key", record.key());
+        row.put("value", record.value());
+        return row;
+    }
+
+    @Value
+    class Progress {
+        /** offsets that can be committed */
+        Map<TopicPartition, OffsetAndMetadata> commit;
+        /** partitions that need to be consumed again from given offset */
+        Map<TopicPartition, Long> rewind;
+    }
+
+    @Value
+    class Stats {
+        long recordsWritten;
+        long batchesWritten;
+        long batchesFailed;
+        long recordsInFlight;
+        long recordsPerSecond;
+    }
+}
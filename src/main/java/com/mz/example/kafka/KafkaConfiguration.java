@@ -1,17 +1,22 @@
 package com.mz.example.kafka;
 
+import com.mz.example.neo4j.Neo4jConfiguration;
 import com.mz.example.neo4j.Neo4jService;
+import com.mz.example.timeline.TimelineLog;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -23,11 +28,47 @@ public class KafkaConfiguration implements CommandLineRunner {
     public static final String TOPIC = "kafka_topic";
 
     public static final String NEO4J_SERVICE_PROPERTY = "neo4j.service";
+    public static final String METER_REGISTRY_PROPERTY = "meter.registry";
+    public static final String TOPIC_DATABASES_PROPERTY = "regional.assignor.topic.databases";
+    public static final String LEADER_LOOKUP_BUDGET_MS_PROPERTY = "regional.assignor.leader.lookup.budget.ms";
+    public static final String LEADER_REFRESH_INTERVAL_MS_PROPERTY = "regional.assignor.leader.refresh.interval.ms";
+    public static final String LEADER_SNAPSHOT_MAX_AGE_MS_PROPERTY = "regional.assignor.leader.snapshot.max.age.ms";
+    public static final long DEFAULT_LEADER_LOOKUP_BUDGET_MS = 2000;
+    public static final long DEFAULT_LEADER_REFRESH_INTERVAL_MS = 10000;
+    public static final long DEFAULT_LEADER_SNAPSHOT_MAX_AGE_MS = 60000;
+    public static final String COMPACT_USER_DATA_PROPERTY = "regional.assignor.compact.user.data";
+    public static final boolean DEFAULT_COMPACT_USER_DATA = true;
+    public static final String LATENCY_PROBE_INTERVAL_MS_PROPERTY = "regional.assignor.latency.probe.interval.ms";
+    public static final String TIMELINE_LOG_PROPERTY = "regional.assignor.timeline.log";
+    public static final String ASSIGNORS_PROPERTY = "regional.assignor.instances";
+    public static final String LATENCY_SLACK_MS_PROPERTY = "regional.assignor.latency.slack.ms";
+    public static final long DEFAULT_LATENCY_PROBE_INTERVAL_MS = 0;
+    public static final long DEFAULT_LATENCY_SLACK_MS = 5;
 
     @Autowired
     private KafkaReader kafkaReader;
+    @Value("${kafka.topicDatabases:" + TOPIC + ":" + Neo4jConfiguration.NEO4J_DATABASE_NAME + "}")
+    private List<String> topicDatabases;
+    @Value("${kafka.groupInstanceId:}")
+    private String groupInstanceId;
+    @Value("${kafka.assignmentStrategies:com.mz.example.kafka.RegionalAssignor}")
+    private List<String> assignmentStrategies;
+    @Value("${kafka.assignor.leaderLookupBudgetMs:" + DEFAULT_LEADER_LOOKUP_BUDGET_MS + "}")
+    private long leaderLookupBudgetMs;
+    @Value("${kafka.assignor.leaderRefreshIntervalMs:" + DEFAULT_LEADER_REFRESH_INTERVAL_MS + "}")
+    private long leaderRefreshIntervalMs;
+    @Value("${kafka.assignor.leaderSnapshotMaxAgeMs:" + DEFAULT_LEADER_SNAPSHOT_MAX_AGE_MS + "}")
+    private long leaderSnapshotMaxAgeMs;
+    @Value("${kafka.assignor.compactUserData:" + DEFAULT_COMPACT_USER_DATA + "}")
+    private boolean compactUserData;
+    @Value("${kafka.assignor.latencyProbeIntervalMs:" + DEFAULT_LATENCY_PROBE_INTERVAL_MS + "}")
+    private long latencyProbeIntervalMs;
+    @Value("${kafka.assignor.latencySlackMs:" + DEFAULT_LATENCY_SLACK_MS + "}")
+    private long latencySlackMs;
 
-    private Map<String, Object> kafkaConsumerProperties(Neo4jService neo4jService) {
+    private Map<String, Object> kafkaConsumerProperties(Neo4jService neo4jService, MeterRegistry meterRegistry,
+                                                        TopicDatabases topicDatabases, TimelineLog timelineLog,
+                                                        RegionalAssignors regionalAssignors) {
         Map<String, Object> properties = new HashMap<>();
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, BROKER);
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, CONSUMER_GROUP);
@@ -36,17 +77,44 @@ public class KafkaConfiguration implements CommandLineRunner {
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
         properties.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, (int) Duration.ofSeconds(120).toMillis());
+        //Static membership, restarted consumer gets its partitions back without rebalance within session timeout
+        if(!groupInstanceId.isEmpty()) {
+            properties.put(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, groupInstanceId);
+        }
 
         //Custom partition assignment
-        properties.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, RegionalAssignor.class.getName());
+        properties.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, assignmentStrategies);
         properties.put(KafkaConfiguration.NEO4J_SERVICE_PROPERTY, neo4jService);
+        properties.put(KafkaConfiguration.METER_REGISTRY_PROPERTY, meterRegistry);
+        properties.put(KafkaConfiguration.TOPIC_DATABASES_PROPERTY, topicDatabases);
+        properties.put(KafkaConfiguration.TIMELINE_LOG_PROPERTY, timelineLog);
+        properties.put(KafkaConfiguration.ASSIGNORS_PROPERTY, regionalAssignors);
+        properties.put(KafkaConfiguration.LEADER_LOOKUP_BUDGET_MS_PROPERTY, leaderLookupBudgetMs);
+        properties.put(KafkaConfiguration.LEADER_REFRESH_INTERVAL_MS_PROPERTY, leaderRefreshIntervalMs);
+        properties.put(KafkaConfiguration.LEADER_SNAPSHOT_MAX_AGE_MS_PROPERTY, leaderSnapshotMaxAgeMs);
+        properties.put(KafkaConfiguration.COMPACT_USER_DATA_PROPERTY, compactUserData);
+        properties.put(KafkaConfiguration.LATENCY_PROBE_INTERVAL_MS_PROPERTY, latencyProbeIntervalMs);
+        properties.put(KafkaConfiguration.LATENCY_SLACK_MS_PROPERTY, latencySlackMs);
         return properties;
     }
 
+    @Bean
+    public TopicDatabases topicDatabases() {
+        return TopicDatabases.parse(topicDatabases);
+    }
+
+    @Bean
+    public RegionalAssignors regionalAssignors() {
+        return new RegionalAssignors();
+    }
+
     @Bean
     @Autowired
-    public KafkaConsumer<byte[], byte[]> kafkaConsumer(Neo4jService neo4jService) {
-        return new KafkaConsumer<>(kafkaConsumerProperties(neo4jService));
+    public KafkaConsumer<byte[], byte[]> kafkaConsumer(Neo4jService neo4jService, MeterRegistry meterRegistry,
+                                                       TopicDatabases topicDatabases, TimelineLog timelineLog,
+                                                       RegionalAssignors regionalAssignors) {
+        return new KafkaConsumer<>(kafkaConsumerProperties(neo4jService, meterRegistry, topicDatabases, timelineLog,
+                regionalAssignors));
     }
 
     @Override
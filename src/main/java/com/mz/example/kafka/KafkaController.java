@@ -0,0 +1,35 @@
+package com.mz.example.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/kafka")
+public class KafkaController {
+
+    @Autowired
+    private LeaderChangeWatcher leaderChangeWatcher;
+    @Autowired
+    private KafkaReader kafkaReader;
+
+    @GetMapping("/leader-watcher/stats")
+    public LeaderChangeWatcher.Stats handleGetLeaderWatcherStats() {
+        return leaderChangeWatcher.getStats();
+    }
+
+    @GetMapping("/ingest/stats")
+    public IngestPipeline.Stats handleGetIngestStats() {
+        return kafkaReader.getIngestStats();
+    }
+
+    @GetMapping("/paused-partitions")
+    public List<PartitionPauses.PausedPartition> handleGetPausedPartitions() {
+        return kafkaReader.getPausedPartitions();
+    }
+}
@@ -1,16 +1,34 @@
 package com.mz.example.kafka;
 
+import com.mz.example.neo4j.Neo4jService;
+import com.mz.example.timeline.TimelineEvent;
+import com.mz.example.timeline.TimelineLog;
+import io.micrometer.core.instrument.*;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.time.Duration;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -18,32 +36,259 @@ public class KafkaReader {
 
     @Autowired
     private KafkaConsumer<byte[], byte[]> kafkaConsumer;
-    private boolean terminated = false;
+    @Autowired
+    private LeaderChangeWatcher leaderChangeWatcher;
+    @Autowired
+    private Neo4jService neo4jService;
+    @Autowired
+    private TopicDatabases topicDatabases;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private TimelineLog timelineLog;
+    @Autowired
+    private RegionalAssignors regionalAssignors;
+    @Value("${kafka.pollTimeoutMs:20000}")
+    private long pollTimeoutMs;
+    @Value("${kafka.ingest.batchSize:500}")
+    private int batchSize;
+    @Value("${kafka.ingest.lingerMs:200}")
+    private long lingerMs;
+    @Value("${kafka.ingest.maxInFlightBatches:4}")
+    private int maxInFlightBatches;
+    @Value("${kafka.ingest.drainTimeoutMs:30000}")
+    private long drainTimeoutMs;
+    @Value("${kafka.ingest.mode:batch}")
+    private String ingestMode;
+    @Value("${kafka.ingest.workers:4}")
+    private int workers;
+    @Value("${kafka.ingest.maxQueuedRecordsPerPartition:5000}")
+    private int maxQueuedRecordsPerPartition;
+    @Value("${kafka.leaderPause.mode:off}")
+    private String leaderPauseMode;
+    @Value("${kafka.leaderPause.throttleRecordsPerSecond:100}")
+    private double throttleRecordsPerSecond;
+    @Value("${kafka.leaderPause.maxPauseMs:120000}")
+    private long maxPauseMs;
+
+    @Value("${kafka.shutdownTimeoutMs:60000}")
+    private long shutdownTimeoutMs;
+
+    private IngestPipeline pipeline;
+    private PartitionPauses pauses;
+    private LeaderLocalityGuard leaderLocalityGuard;
+    private volatile boolean terminated = false;
+    private volatile boolean polling = false;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private DistributionSummary pollSize;
+    private Timer pollInterval;
 
     @PostConstruct
     public void setup() {
-        kafkaConsumer.subscribe(Collections.singletonList(KafkaConfiguration.TOPIC));
+        pipeline = createPipeline();
+        pauses = new PartitionPauses(kafkaConsumer, meterRegistry, timelineLog);
+        leaderLocalityGuard = new LeaderLocalityGuard(LeaderLocalityGuard.parseMode(leaderPauseMode),
+                throttleRecordsPerSecond, maxPauseMs, topicDatabases,
+                //last leader seen by watcher, so polling thread never waits for neo4j
+                leaderChangeWatcher::getLeader,
+                neo4jService::getSameDCServers);
+        registerMetrics();
+        log.info("Subscribing to topics: " + topicDatabases);
+        kafkaConsumer.subscribe(topicDatabases.getTopics(), new ConsumerRebalanceListener() {
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                log.info("Partitions revoked: " + partitions);
+                timelineLog.record(TimelineEvent.Type.PARTITIONS_REVOKED, partitions.size());
+                commitWritten(pipeline.drain(partitions, drainTimeoutMs), true);
+                pauses.forget(partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(Collection<TopicPartition> partitions) {
+                log.info("Partitions lost: " + partitions);
+                timelineLog.record(TimelineEvent.Type.PARTITIONS_LOST, partitions.size());
+                pipeline.drop(partitions);
+                pauses.forget(partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                log.info("Partitions assigned: " + partitions);
+                timelineLog.record(TimelineEvent.Type.PARTITIONS_ASSIGNED, partitions.size());
+                leaderChangeWatcher.onPartitionsAssigned();
+            }
+        });
+        //wakeup is the only consumer method that is safe to call from other thread
+        leaderChangeWatcher.onRebalanceRequested(kafkaConsumer::wakeup);
     }
 
+    private IngestPipeline createPipeline() {
+        switch (ingestMode) {
+            case "batch":
+                return new BatchingPipeline(this::writeRecords, batchSize, lingerMs,
+                        maxInFlightBatches);
+            case "parallel":
+                return new PartitionLanePipeline(this::writeRecords, batchSize, workers,
+                        maxQueuedRecordsPerPartition);
+            default:
+                throw new IllegalArgumentException("Unknown kafka.ingest.mode: " + ingestMode
+                        + ". Supported modes: batch, parallel");
+        }
+    }
+
+    /**
+     * Batch may contain records of topics mapped to different databases, each database is written in its own
+     * transaction. Batch fails when any of them fails, records are written with MERGE so retrying is safe.
+     */
+    private CompletionStage<Void> writeRecords(List<Map<String, Object>> records) {
+        Map<String, List<Map<String, Object>>> recordsPerDatabase = records.stream()
+                .collect(Collectors.groupingBy(record -> topicDatabases.getDatabase((String) record.get("topic"))));
+        if(recordsPerDatabase.size() == 1) {
+            Map.Entry<String, List<Map<String, Object>>> database = recordsPerDatabase.entrySet().iterator().next();
+            return neo4jService.writeKafkaRecordsAsync(database.getKey(), database.getValue());
+        }
+        return CompletableFuture.allOf(recordsPerDatabase.entrySet().stream()
+                .map(database -> neo4jService.writeKafkaRecordsAsync(database.getKey(), database.getValue())
+                        .toCompletableFuture())
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private void registerMetrics() {
+        pollSize = DistributionSummary.builder("kafka.poll.records").register(meterRegistry);
+        pollInterval = Timer.builder("kafka.poll.interval").register(meterRegistry);
+        registerIngestCounter("kafka.ingest.records.written", IngestPipeline.Stats::getRecordsWritten);
+        registerIngestCounter("kafka.ingest.batches.written", IngestPipeline.Stats::getBatchesWritten);
+        registerIngestCounter("kafka.ingest.batches.failed", IngestPipeline.Stats::getBatchesFailed);
+        Gauge.builder("kafka.ingest.records.in.flight", this, reader -> reader.getIngestStats().getRecordsInFlight())
+                .register(meterRegistry);
+    }
+
+    private void registerIngestCounter(String name, ToDoubleFunction<IngestPipeline.Stats> count) {
+        FunctionCounter.builder(name, this, reader -> count.applyAsDouble(reader.getIngestStats()))
+                .tag("mode", ingestMode)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Kafka consumer is not thread safe, so polling thread is woken up and it drains records in flight, commits their
+     * offsets and closes the consumer itself. Waits at most <code>kafka.shutdownTimeoutMs</code> for it.
+     */
     @PreDestroy
-    //TODO: no graceful shutdown
-    public synchronized void terminate() {
+    public void terminate() {
         terminated = true;
-        kafkaConsumer.close();
+        if(!polling) {
+            close();
+            return;
+        }
+        kafkaConsumer.wakeup();
+        try {
+            if(!stopped.await(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Kafka consumer did not stop within " + shutdownTimeoutMs + " ms.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private synchronized boolean isTerminated() {
-        return terminated;
+    public IngestPipeline.Stats getIngestStats() {
+        return pipeline.getStats();
+    }
+
+    public List<PartitionPauses.PausedPartition> getPausedPartitions() {
+        return pauses.getPausedPartitions();
     }
 
     @Async
     public void startConsumingMessages() {
-        while (!isTerminated()) {
-            ConsumerRecords<byte[], byte[]> records = kafkaConsumer.poll(Duration.ofSeconds(20));
-            log.info("Polled " + records.count() + " records");
-            log.info("===================================== PARTITION ASSIGNMENT =========================================");
-            kafkaConsumer.assignment().forEach(tp -> log.info("assigned to partition: " + tp.toString()));
-            log.info("===================================== END OF ASSIGNMENT =========================================");
+        polling = true;
+        try {
+            consumeMessages();
+        } finally {
+            shutdown();
+            stopped.countDown();
+        }
+    }
+
+    private void consumeMessages() {
+        long lastPollAt = -1;
+        while (!terminated) {
+            if(leaderChangeWatcher.takeRebalanceRequest()) {
+                log.info("Neo4j leader changed region. Enforcing rebalance.");
+                kafkaConsumer.enforceRebalance();
+            }
+            long pollAt = System.nanoTime();
+            if(lastPollAt >= 0) {
+                pollInterval.record(pollAt - lastPollAt, TimeUnit.NANOSECONDS);
+            }
+            lastPollAt = pollAt;
+            ConsumerRecords<byte[], byte[]> records;
+            try {
+                records = kafkaConsumer.poll(Duration.ofMillis(
+                        leaderLocalityGuard.maxPollWaitMs(pipeline.maxPollWaitMs(pollTimeoutMs))));
+            } catch (WakeupException ex) {
+                //woken up by rebalance request or shutdown
+                continue;
+            }
+            log.debug("Polled " + records.count() + " records");
+            pollSize.record(records.count());
+            for (ConsumerRecord<byte[], byte[]> record : records) {
+                pipeline.add(record);
+            }
+            pipeline.afterPoll(pauses);
+            leaderLocalityGuard.afterPoll(records, pauses);
+            commitWritten(pipeline.takeWritten(), false);
+        }
+    }
+
+    /**
+     * Leaves the group only after records of assigned partitions are written and their offsets committed, so next
+     * owner continues right after them. With static membership (<code>kafka.groupInstanceId</code>) consumer does not
+     * leave the group on close, its partitions wait for it for session timeout instead of being rebalanced.
+     */
+    private void shutdown() {
+        try {
+            Set<TopicPartition> assignment = kafkaConsumer.assignment();
+            log.info("Shutting down kafka consumer. Draining partitions: " + assignment);
+            IngestPipeline.Progress progress = pipeline.drain(assignment, drainTimeoutMs);
+            try {
+                commitWritten(progress, true);
+            } catch (WakeupException ex) {
+                //wakeup from terminate() arrived after last poll, it is cleared once thrown
+                commitWritten(progress, true);
+            }
+        } catch (Exception ex) {
+            log.error("Unable to commit offsets of written records on shutdown.", ex);
+        } finally {
+            close();
+            log.info("Kafka consumer closed.");
+        }
+    }
+
+    private void close() {
+        kafkaConsumer.close();
+        regionalAssignors.close();
+        pipeline.close();
+    }
+
+    /**
+     * Commits offsets of records written to neo4j and seeks back partitions which records failed to be written.
+     */
+    private void commitWritten(IngestPipeline.Progress progress, boolean sync) {
+        if(!progress.getCommit().isEmpty()) {
+            if(sync) {
+                kafkaConsumer.commitSync(progress.getCommit());
+            } else {
+                kafkaConsumer.commitAsync(progress.getCommit(), (offsets, ex) -> {
+                    if(ex != null) {
+                        log.warn("Committing offsets " + offsets + " failed.", ex);
+                    }
+                });
+            }
         }
+        progress.getRewind().forEach((tp, offset) -> {
+            if(kafkaConsumer.assignment().contains(tp)) {
+                kafkaConsumer.seek(tp, offset);
+            }
+        });
     }
 }
@@ -0,0 +1,92 @@
+package com.mz.example.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Periodically measures latency from this consumer to every server of current {@link ServerTopology}. Latency is time
+ * of TCP connect, which takes single round trip, so it does not need credentials or open sessions on the server.
+ * Measurements are smoothed, so single slow connect does not change ranking of consumers.
+ */
+@Slf4j
+class LatencyProber implements AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final double SMOOTHING = 0.3;
+
+    private final Supplier<ServerTopology> topology;
+    private final ScheduledExecutorService executor;
+    private volatile Map<String, Integer> latencyMicros = Collections.emptyMap();
+
+    LatencyProber(Supplier<ServerTopology> topology, long intervalMillis) {
+        this.topology = topology;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "neo4j-latency-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::probeAll, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return smoothed latency per server address, servers that could not be reached are missing
+     */
+    Map<String, Integer> getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    private void probeAll() {
+        ServerTopology current = topology.get();
+        if(current == null) {
+            return;
+        }
+        Map<String, Integer> previous = latencyMicros;
+        Map<String, Integer> measured = new HashMap<>();
+        for (int i = 0; i < current.size(); i++) {
+            String server = current.get(i);
+            try {
+                long micros = probe(server);
+                Integer smoothed = previous.get(server);
+                measured.put(server, smoothed == null
+                        ? (int) micros
+                        : (int) (SMOOTHING * micros + (1 - SMOOTHING) * smoothed));
+            } catch (IOException | RuntimeException ex) {
+                log.debug("Neo4j server " + server + " is not reachable: " + ex.getMessage());
+            }
+        }
+        latencyMicros = Collections.unmodifiableMap(measured);
+        log.debug("Neo4j latency: " + measured);
+    }
+
+    /**
+     * @return time in microseconds it took to connect to given <code>host:port</code>
+     */
+    long probe(String server) throws IOException {
+        int separator = server.lastIndexOf(':');
+        InetSocketAddress address = new InetSocketAddress(server.substring(0, separator),
+                Integer.parseInt(server.substring(separator + 1)));
+        if(address.isUnresolved()) {
+            throw new IOException("Can't resolve " + server);
+        }
+        try (Socket socket = new Socket()) {
+            long start = System.nanoTime();
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+            return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
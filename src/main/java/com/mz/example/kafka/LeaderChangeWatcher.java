@@ -0,0 +1,205 @@
+package com.mz.example.kafka;
+
+import com.mz.example.neo4j.Neo4jConfiguration;
+import com.mz.example.neo4j.Neo4jService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows Neo4j leader of each database consumed topics are written to and requests Kafka rebalance when leader moves
+ * between this consumer's data center and remote one. Leader moving within same region group does not change assignment
+ * so it is ignored.<br/>
+ * To avoid rebalance storms when leader flaps new region group must be observed for
+ * <code>kafka.leaderWatcher.debounceMs</code> before it is accepted, and rebalances are requested at most once per
+ * <code>kafka.leaderWatcher.cooldownMs</code>, see {@link LeaderLocalityDebouncer}.<br/>
+ * <b>NOTE:</b> Kafka consumer is not thread safe, so watcher only raises a flag and wakes up polling thread -
+ * {@link KafkaReader} calls <code>enforceRebalance()</code> itself.
+ */
+@Slf4j
+@Component
+public class LeaderChangeWatcher {
+
+    @Autowired
+    private Neo4jService neo4jService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private TopicDatabases topicDatabases;
+    @Value("${kafka.leaderWatcher.enabled:true}")
+    private boolean enabled;
+    @Value("${kafka.leaderWatcher.pollIntervalMs:1000}")
+    private long pollIntervalMs;
+    @Value("${kafka.leaderWatcher.debounceMs:5000}")
+    private long debounceMs;
+    @Value("${kafka.leaderWatcher.cooldownMs:60000}")
+    private long cooldownMs;
+
+    private final AtomicBoolean rebalanceRequested = new AtomicBoolean();
+    private final AtomicLong rebalancesRequested = new AtomicLong();
+    private final AtomicLong changesIgnored = new AtomicLong();
+    private final AtomicLong reassignments = new AtomicLong();
+    private final AtomicLong totalChangeToAssignmentMs = new AtomicLong();
+    private final AtomicLong maxChangeToAssignmentMs = new AtomicLong();
+    private volatile long lastChangeToAssignmentMs = -1;
+    private volatile long pendingChangeObservedAt = -1;
+    private volatile Runnable rebalanceCallback = () -> {};
+
+    private ScheduledExecutorService executor;
+    private Timer changeToAssignment;
+    //only accessed from watcher thread
+    private final Set<String> databases = new LinkedHashSet<>();
+    private LeaderLocalityDebouncer debouncer;
+    private final Map<String, Optional<String>> observedLeaders = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void setup() {
+        changeToAssignment = Timer.builder("kafka.leader.change.to.assignment")
+                .description("Time from neo4j leader changing region to partitions being reassigned")
+                .register(meterRegistry);
+        meterRegistry.more().counter("kafka.leader.change.rebalances.requested", Collections.emptyList(),
+                rebalancesRequested);
+        if(!enabled) {
+            log.info("Neo4j leader change watcher disabled");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "neo4j-leader-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        debouncer = new LeaderLocalityDebouncer(debounceMs, cooldownMs);
+        databases.addAll(topicDatabases.getDatabases());
+        if(databases.isEmpty()) {
+            databases.add(Neo4jConfiguration.NEO4J_DATABASE_NAME);
+        }
+        executor.scheduleWithFixedDelay(this::checkLeaders, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void terminate() {
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param callback invoked from watcher thread when rebalance is requested, must be thread safe
+     */
+    public void onRebalanceRequested(Runnable callback) {
+        this.rebalanceCallback = callback;
+    }
+
+    /**
+     * @return true once per requested rebalance
+     */
+    public boolean takeRebalanceRequest() {
+        return rebalanceRequested.getAndSet(false);
+    }
+
+    /**
+     * Should be called by consumer when new partitions are assigned, completes measurement of time between leader
+     * change and reassignment.
+     */
+    public void onPartitionsAssigned() {
+        long observedAt = pendingChangeObservedAt;
+        if(observedAt < 0 || rebalanceRequested.get()) {
+            return;
+        }
+        pendingChangeObservedAt = -1;
+        long took = System.currentTimeMillis() - observedAt;
+        lastChangeToAssignmentMs = took;
+        reassignments.incrementAndGet();
+        totalChangeToAssignmentMs.addAndGet(took);
+        maxChangeToAssignmentMs.accumulateAndGet(took, Math::max);
+        changeToAssignment.record(took, TimeUnit.MILLISECONDS);
+        log.info("Partitions reassigned " + took + " ms after neo4j leader changed region.");
+    }
+
+    /**
+     * Leader seen by last check of given database, so it was queried from neo4j at most poll interval ago. Does not
+     * block, safe to call from polling thread.
+     *
+     * @return empty when database has no leader, watcher does not follow the database or did not check it yet
+     */
+    public Optional<String> getLeader(String database) {
+        return observedLeaders.getOrDefault(database, Optional.empty());
+    }
+
+    public Stats getStats() {
+        long count = reassignments.get();
+        return new Stats(rebalancesRequested.get(), changesIgnored.get(), count, lastChangeToAssignmentMs,
+                maxChangeToAssignmentMs.get(), count == 0 ? 0 : totalChangeToAssignmentMs.get() / count);
+    }
+
+    /**
+     * Queries routing table on every check, cached one shows leader change only after up to routing ttl.
+     */
+    private void checkLeaders() {
+        databases.forEach(database -> {
+            try {
+                Optional<String> leader = neo4jService.getFreshRoutingTable(database,
+                        Neo4jConfiguration.NEO4J_LB_POLICY).getLeaderAddress();
+                observedLeaders.put(database, leader);
+                if(leader.isPresent()) {
+                    onLeaderObserved(database, leader.get(), System.currentTimeMillis());
+                }
+            } catch (Exception ex) {
+                log.warn("Unable to check neo4j leader of " + database + " database.", ex);
+            }
+        });
+    }
+
+    private void onLeaderObserved(String database, String leader, long now) {
+        LeaderLocalityDebouncer.Locality observed = neo4jService.getSameDCServers().contains(leader)
+                ? LeaderLocalityDebouncer.Locality.LOCAL : LeaderLocalityDebouncer.Locality.REMOTE;
+        switch (debouncer.observe(database, observed, now)) {
+            case RETURNED:
+                log.info("Neo4j leader of " + database + " database returned to " + observed
+                        + " region before change was accepted.");
+                changesIgnored.incrementAndGet();
+                break;
+            case CANDIDATE:
+                log.info("Neo4j leader of " + database + " database " + leader + " moved to " + observed + " region.");
+                break;
+            case REBALANCE:
+                long changedAt = debouncer.getAcceptedSince(database);
+                log.info("Neo4j leader of " + database + " database stayed in " + observed + " region for "
+                        + (now - changedAt) + " ms. Requesting rebalance.");
+                pendingChangeObservedAt = changedAt;
+                rebalancesRequested.incrementAndGet();
+                rebalanceRequested.set(true);
+                rebalanceCallback.run();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @lombok.Value
+    public static class Stats {
+        long rebalancesRequested;
+        long leaderChangesIgnored;
+        long reassignments;
+        long lastChangeToAssignmentMs;
+        long maxChangeToAssignmentMs;
+        long avgChangeToAssignmentMs;
+    }
+}
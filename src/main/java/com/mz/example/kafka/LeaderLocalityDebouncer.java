@@ -0,0 +1,81 @@
+package com.mz.example.kafka;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides when leader of a database moving between this consumer's data center and remote one should cause
+ * rebalance. New locality must be observed for <code>debounceMs</code> before it is accepted, and changes are accepted
+ * at most once per <code>cooldownMs</code>. Time is passed by caller, so {@link LeaderChangeWatcher} and rebalance
+ * simulator drive same state machine.<br/>
+ * <b>NOTE:</b> not thread safe.
+ */
+class LeaderLocalityDebouncer {
+
+    enum Locality { LOCAL, REMOTE }
+
+    enum Decision {
+        /** locality did not change, was observed for the first time or change waits for debounce or cooldown */
+        NONE,
+        /** leader moved to other locality, change is accepted if it stays there for debounce time */
+        CANDIDATE,
+        /** leader returned to accepted locality before change was accepted */
+        RETURNED,
+        /** change is accepted, rebalance should be requested */
+        REBALANCE
+    }
+
+    private final long debounceMs;
+    private final long cooldownMs;
+    private final Map<String, DatabaseLeader> leaders = new HashMap<>();
+    private long lastRebalanceAt = Long.MIN_VALUE / 2;
+
+    private static class DatabaseLeader {
+        private Locality accepted;
+        private long acceptedSince;
+        private Locality candidate;
+        private long candidateSince;
+    }
+
+    LeaderLocalityDebouncer(long debounceMs, long cooldownMs) {
+        this.debounceMs = debounceMs;
+        this.cooldownMs = cooldownMs;
+    }
+
+    Decision observe(String database, Locality observed, long now) {
+        DatabaseLeader state = leaders.computeIfAbsent(database, db -> new DatabaseLeader());
+        if(state.accepted == null) {
+            state.accepted = observed;
+            state.acceptedSince = now;
+            return Decision.NONE;
+        }
+        if(observed == state.accepted) {
+            if(state.candidate != null) {
+                state.candidate = null;
+                return Decision.RETURNED;
+            }
+            return Decision.NONE;
+        }
+        if(observed != state.candidate) {
+            state.candidate = observed;
+            state.candidateSince = now;
+            return Decision.CANDIDATE;
+        }
+        if(now - state.candidateSince < debounceMs || now - lastRebalanceAt < cooldownMs) {
+            return Decision.NONE;
+        }
+        state.accepted = observed;
+        state.acceptedSince = state.candidateSince;
+        state.candidate = null;
+        lastRebalanceAt = now;
+        return Decision.REBALANCE;
+    }
+
+    /**
+     * @return time accepted locality of given database was first observed, -1 when database was not observed yet
+     */
+    long getAcceptedSince(String database) {
+        DatabaseLeader state = leaders.get(database);
+        return state == null || state.accepted == null ? -1 : state.acceptedSince;
+    }
+}
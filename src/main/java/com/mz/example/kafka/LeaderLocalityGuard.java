@@ -0,0 +1,176 @@
+package com.mz.example.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Checks on each poll cycle whether neo4j leader of each consumed database is in this consumer's data center. Until
+ * partitions move to consumer closer to the leader, partitions written to remote leader are:
+ * <ul>
+ *     <li><code>pause</code> - paused for at most <code>maxPauseMs</code>, then throttled. When no consumer of the group
+ *     is close to the leader partitions do not move and pause would stop ingestion until leader moves back.</li>
+ *     <li><code>throttle</code> - consumed at most at <code>throttleRecordsPerSecond</code>, partitions are paused
+ *     once budget is used up and resumed when it refills</li>
+ *     <li><code>off</code> - consumed as usual</li>
+ * </ul>
+ * Partitions are resumed when leader is back in local data center. Partitions revoked from consumer are no longer
+ * paused by Kafka, new owner decides on its own. When leader is unknown partitions are not paused.<br/>
+ * <b>NOTE:</b> called only from polling thread.
+ */
+@Slf4j
+class LeaderLocalityGuard {
+
+    enum Mode { OFF, PAUSE, THROTTLE }
+
+    //how often locality is checked and throttle budget refilled while partitions are paused
+    static final long PAUSED_POLL_WAIT_MS = 1000;
+
+    private final Mode mode;
+    private final double throttleRecordsPerSecond;
+    private final long maxPauseMs;
+    private final TopicDatabases topicDatabases;
+    private final Function<String, Optional<String>> leaderOfDatabase;
+    private final Supplier<List<String>> sameDCServers;
+
+    //since when leader of database is remote
+    private final Map<String, Long> remoteDatabases = new HashMap<>();
+    //remote databases paused for longer than maxPauseMs, their partitions are throttled
+    private final Set<String> pauseExpired = new HashSet<>();
+    private double throttleBudget;
+    private long lastRefillAt = -1;
+    private long throttledUntil = -1;
+
+    /**
+     * @param maxPauseMs time after which paused partitions are throttled instead, 0 or less to pause without limit
+     */
+    LeaderLocalityGuard(Mode mode, double throttleRecordsPerSecond, long maxPauseMs, TopicDatabases topicDatabases,
+                        Function<String, Optional<String>> leaderOfDatabase, Supplier<List<String>> sameDCServers) {
+        if((mode == Mode.THROTTLE || (mode == Mode.PAUSE && maxPauseMs > 0)) && throttleRecordsPerSecond <= 0) {
+            throw new IllegalArgumentException("Throttle rate must be positive, was: " + throttleRecordsPerSecond);
+        }
+        this.mode = mode;
+        this.throttleRecordsPerSecond = throttleRecordsPerSecond;
+        this.maxPauseMs = maxPauseMs;
+        this.topicDatabases = topicDatabases;
+        this.leaderOfDatabase = leaderOfDatabase;
+        this.sameDCServers = sameDCServers;
+        this.throttleBudget = throttleRecordsPerSecond;
+    }
+
+    static Mode parseMode(String mode) {
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown kafka.leaderPause.mode: " + mode
+                    + ". Supported modes: off, pause, throttle");
+        }
+    }
+
+    void afterPoll(ConsumerRecords<?, ?> records, PartitionPauses pauses) {
+        afterPoll(records, pauses, System.currentTimeMillis());
+    }
+
+    void afterPoll(ConsumerRecords<?, ?> records, PartitionPauses pauses, long now) {
+        if(mode == Mode.OFF) {
+            return;
+        }
+        Set<TopicPartition> assignment = pauses.assignment();
+        updateRemoteDatabases(assignment, now);
+        Set<TopicPartition> paused = new HashSet<>();
+        Set<TopicPartition> throttled = new HashSet<>();
+        for (TopicPartition tp : assignment) {
+            String database = topicDatabases.getDatabase(tp.topic());
+            if(!remoteDatabases.containsKey(database)) {
+                continue;
+            }
+            if(mode == Mode.PAUSE && !pauseExpired.contains(database)) {
+                paused.add(tp);
+            } else {
+                throttled.add(tp);
+            }
+        }
+        pauses.resume(assignment.stream().filter(tp -> !paused.contains(tp)).collect(Collectors.toList()),
+                PartitionPauses.Reason.REMOTE_LEADER);
+        pauses.resume(assignment.stream().filter(tp -> !throttled.contains(tp)).collect(Collectors.toList()),
+                PartitionPauses.Reason.THROTTLE);
+        pauses.pause(paused, PartitionPauses.Reason.REMOTE_LEADER);
+        throttle(records, throttled, pauses, now);
+    }
+
+    /**
+     * Budget refills at throttle rate up to one second worth of records. Records polled from remote partitions use it
+     * up, when it goes below zero partitions are paused for as long as it takes to pay the debt back.
+     */
+    private void throttle(ConsumerRecords<?, ?> records, Set<TopicPartition> remote, PartitionPauses pauses,
+                          long now) {
+        if(lastRefillAt >= 0) {
+            throttleBudget = Math.min(throttleRecordsPerSecond,
+                    throttleBudget + (now - lastRefillAt) * throttleRecordsPerSecond / 1000);
+        }
+        lastRefillAt = now;
+        for (TopicPartition tp : remote) {
+            throttleBudget -= records.records(tp).size();
+        }
+        if(throttleBudget < 0) {
+            throttledUntil = now + (long) Math.ceil(-throttleBudget * 1000 / throttleRecordsPerSecond);
+            pauses.pause(remote, PartitionPauses.Reason.THROTTLE);
+        } else {
+            throttledUntil = -1;
+            pauses.resume(remote, PartitionPauses.Reason.THROTTLE);
+        }
+    }
+
+    private void updateRemoteDatabases(Set<TopicPartition> assignment, long now) {
+        Set<String> databases = assignment.stream()
+                .map(tp -> topicDatabases.getDatabase(tp.topic()))
+                .collect(Collectors.toSet());
+        remoteDatabases.keySet().retainAll(databases);
+        for (String database : databases) {
+            Optional<String> leader;
+            try {
+                leader = leaderOfDatabase.apply(database);
+            } catch (Exception ex) {
+                log.warn("Unable to check neo4j leader of " + database + " database, keeping its partitions as they are.",
+                        ex);
+                continue;
+            }
+            boolean remote = leader.isPresent() && !sameDCServers.get().contains(leader.get());
+            if(remote && remoteDatabases.putIfAbsent(database, now) == null) {
+                log.info("Neo4j leader " + leader.get() + " of " + database + " database is in remote data center. "
+                        + (mode == Mode.PAUSE ? "Pausing" : "Throttling") + " its partitions.");
+            } else if(!remote && remoteDatabases.remove(database) != null) {
+                log.info("Neo4j leader of " + database + " database is " + leader.map(l -> "back in local data center")
+                        .orElse("unknown") + ". Resuming its partitions.");
+            }
+        }
+        pauseExpired.retainAll(remoteDatabases.keySet());
+        if(mode == Mode.PAUSE && maxPauseMs > 0) {
+            remoteDatabases.forEach((database, since) -> {
+                if(now - since >= maxPauseMs && pauseExpired.add(database)) {
+                    log.info("Partitions of " + database + " database were paused for " + (now - since)
+                            + " ms and did not move closer to neo4j leader. Throttling them instead.");
+                }
+            });
+        }
+    }
+
+    /**
+     * Locality is checked only between polls, so poll should return often while partitions are held back.
+     */
+    long maxPollWaitMs(long pollWaitMs) {
+        if(remoteDatabases.isEmpty()) {
+            return pollWaitMs;
+        }
+        long wait = PAUSED_POLL_WAIT_MS;
+        if(throttledUntil >= 0) {
+            wait = Math.max(1, Math.min(wait, throttledUntil - System.currentTimeMillis()));
+        }
+        return Math.min(pollWaitMs, wait);
+    }
+}
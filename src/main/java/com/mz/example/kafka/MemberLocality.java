@@ -0,0 +1,21 @@
+package com.mz.example.kafka;
+
+import lombok.Value;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Consumer's view of neo4j servers sent in subscription user data.
+ */
+@Value
+class MemberLocality {
+
+    static final MemberLocality UNKNOWN = new MemberLocality(Collections.emptySet(), Collections.emptyMap());
+
+    /** servers listed in neo4j.sameDCServers */
+    Set<String> eligibleServers;
+    /** latency measured by {@link LatencyProber}, servers that were not reached are missing */
+    Map<String, Integer> latencyMicros;
+}
@@ -0,0 +1,121 @@
+package com.mz.example.kafka;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Looks up current Neo4j leader without blocking caller for longer than given budget. Leader is also refreshed
+ * periodically on separate thread, so when lookup does not finish within the budget last known leader can be used.
+ * At most one lookup runs at a time - slow lookup is shared by subsequent callers instead of starting new one.
+ */
+@Slf4j
+class Neo4jLeaderLookup implements AutoCloseable {
+
+    enum Path {
+        /** leader retrieved within the budget */
+        FRESH,
+        /** budget exceeded, last known leader used */
+        SNAPSHOT,
+        /** budget exceeded and no usable snapshot */
+        NONE
+    }
+
+    @Value
+    static class Result {
+        Path path;
+        Optional<String> leader;
+    }
+
+    @Value
+    private static class Snapshot {
+        Optional<String> leader;
+        long takenAt;
+    }
+
+    private final Supplier<Optional<String>> leaderSupplier;
+    private final long budgetMillis;
+    private final long snapshotMaxAgeMillis;
+    private final ScheduledExecutorService executor;
+    private volatile Snapshot snapshot;
+    private CompletableFuture<Optional<String>> inFlight;
+
+    Neo4jLeaderLookup(Supplier<Optional<String>> leaderSupplier, long budgetMillis,
+                      long refreshIntervalMillis, long snapshotMaxAgeMillis) {
+        this.leaderSupplier = leaderSupplier;
+        this.budgetMillis = budgetMillis;
+        this.snapshotMaxAgeMillis = snapshotMaxAgeMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "neo4j-leader-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Looks up leaders concurrently, so all lookups together do not take longer than the longest budget.
+     */
+    static <K> Map<K, Result> lookupAll(Map<K, Neo4jLeaderLookup> lookups) {
+        long startedAt = System.nanoTime();
+        Map<K, CompletableFuture<Optional<String>>> started = new LinkedHashMap<>();
+        lookups.forEach((key, lookup) -> started.put(key, lookup.refresh()));
+        Map<K, Result> results = new LinkedHashMap<>();
+        started.forEach((key, future) -> {
+            Neo4jLeaderLookup lookup = lookups.get(key);
+            results.put(key, lookup.await(future, startedAt + TimeUnit.MILLISECONDS.toNanos(lookup.budgetMillis)));
+        });
+        return results;
+    }
+
+    private Result await(CompletableFuture<Optional<String>> future, long deadlineNanos) {
+        try {
+            return new Result(Path.FRESH, future.get(Math.max(0, deadlineNanos - System.nanoTime()),
+                    TimeUnit.NANOSECONDS));
+        } catch (TimeoutException ex) {
+            log.warn("Neo4j leader lookup did not finish within " + budgetMillis + " ms.");
+        } catch (ExecutionException ex) {
+            log.error("Neo4j leader lookup failed.", ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        Snapshot current = snapshot;
+        if(current != null && System.currentTimeMillis() - current.getTakenAt() <= snapshotMaxAgeMillis) {
+            return new Result(Path.SNAPSHOT, current.getLeader());
+        }
+        return new Result(Path.NONE, Optional.empty());
+    }
+
+    private synchronized CompletableFuture<Optional<String>> refresh() {
+        CompletableFuture<Optional<String>> future = inFlight;
+        if(future == null) {
+            CompletableFuture<Optional<String>> started = CompletableFuture.supplyAsync(leaderSupplier, executor);
+            inFlight = started;
+            started.whenComplete((leader, ex) -> onRefreshed(started, leader, ex));
+            future = started;
+        }
+        return future;
+    }
+
+    private synchronized void onRefreshed(CompletableFuture<Optional<String>> future, Optional<String> leader,
+                                          Throwable ex) {
+        if(ex == null) {
+            snapshot = new Snapshot(leader, System.currentTimeMillis());
+        } else {
+            log.warn("Unable to refresh Neo4j leader snapshot.", ex);
+        }
+        if(inFlight == future) {
+            inFlight = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,272 @@
+package com.mz.example.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Processes each assigned partition in its own lane. Lanes run in parallel on bounded pool of workers, while records
+ * within a lane are written one batch after another, in offset order. Polling thread only hands records over, so it
+ * stays free to poll and heartbeat.<br/>
+ * When lane has more than <code>maxQueuedRecordsPerPartition</code> records waiting its partition is paused and it is
+ * resumed once lane is below half of that limit. Offsets are committed per partition up to the last record of the
+ * last batch written - batches in a lane complete in order, so it is the highest contiguous completed record.<br/>
+ * When batch write fails lane drops everything queued after it and partition is consumed again from first record of
+ * failed batch.
+ */
+@Slf4j
+class PartitionLanePipeline implements IngestPipeline {
+
+    private static final long BUSY_POLL_WAIT_MS = 100;
+
+    private final Function<List<Map<String, Object>>, CompletionStage<Void>> writer;
+    private final int batchSize;
+    private final int maxQueuedRecordsPerPartition;
+    private final ExecutorService workers;
+    private final Map<TopicPartition, Lane> lanes = new ConcurrentHashMap<>();
+    //partitions paused by this pipeline, partition stays paused while other reason holds it
+    private final Set<TopicPartition> paused = new HashSet<>();
+
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong batchesFailed = new AtomicLong();
+
+    PartitionLanePipeline(Function<List<Map<String, Object>>, CompletionStage<Void>> writer, int batchSize,
+                          int workerCount, int maxQueuedRecordsPerPartition) {
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.maxQueuedRecordsPerPartition = maxQueuedRecordsPerPartition;
+        this.workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "partition-lane-worker-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void add(ConsumerRecord<byte[], byte[]> record) {
+        TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+        lanes.computeIfAbsent(tp, Lane::new).add(record);
+    }
+
+    @Override
+    public void afterPoll(PartitionPauses pauses) {
+        List<TopicPartition> toPause = new ArrayList<>();
+        List<TopicPartition> toResume = new ArrayList<>();
+        lanes.values().forEach(lane -> {
+            lane.submitPending();
+            int queued = lane.queuedRecords();
+            if(queued > maxQueuedRecordsPerPartition && paused.add(lane.tp)) {
+                toPause.add(lane.tp);
+            } else if(queued <= maxQueuedRecordsPerPartition / 2 && paused.remove(lane.tp)) {
+                toResume.add(lane.tp);
+            }
+        });
+        if(!toPause.isEmpty()) {
+            log.debug("Pausing partitions with full lanes: " + toPause);
+            pauses.pause(toPause, PartitionPauses.Reason.BACKPRESSURE);
+        }
+        if(!toResume.isEmpty()) {
+            log.debug("Resuming partitions: " + toResume);
+            pauses.resume(toResume, PartitionPauses.Reason.BACKPRESSURE);
+        }
+    }
+
+    /**
+     * Paused partitions are resumed and written offsets committed only between polls, so poll should return often
+     * while lanes are busy.
+     */
+    @Override
+    public long maxPollWaitMs(long idlePollMs) {
+        boolean busy = !paused.isEmpty() || lanes.values().stream().anyMatch(Lane::isBusy);
+        return busy ? Math.min(idlePollMs, BUSY_POLL_WAIT_MS) : idlePollMs;
+    }
+
+    @Override
+    public Progress takeWritten() {
+        Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+        Map<TopicPartition, Long> rewind = new HashMap<>();
+        lanes.values().forEach(lane -> lane.takeWritten(commit, rewind));
+        return new Progress(commit, rewind);
+    }
+
+    @Override
+    public Progress drain(Collection<TopicPartition> partitions, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+        Map<TopicPartition, Long> rewind = new HashMap<>();
+        for (TopicPartition tp : partitions) {
+            Lane lane = lanes.remove(tp);
+            paused.remove(tp);
+            if(lane == null) {
+                continue;
+            }
+            lane.submitPending();
+            if(!lane.awaitIdle(deadline)) {
+                log.warn("Lane of " + tp + " was not drained within " + timeoutMs + " ms.");
+            }
+            lane.stop();
+            lane.takeWritten(commit, rewind);
+        }
+        return new Progress(commit, rewind);
+    }
+
+    @Override
+    public void drop(Collection<TopicPartition> partitions) {
+        partitions.forEach(tp -> {
+            Lane lane = lanes.remove(tp);
+            paused.remove(tp);
+            if(lane != null) {
+                lane.stop();
+            }
+        });
+    }
+
+    @Override
+    public Stats getStats() {
+        long written = recordsWritten.get();
+        long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+        long inFlight = 0;
+        for (Lane lane : lanes.values()) {
+            inFlight += lane.queuedRecords();
+        }
+        return new Stats(written, batchesWritten.get(), batchesFailed.get(), inFlight, written * 1000 / elapsed);
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private class Lane {
+        private final TopicPartition tp;
+        //records added since last submit, only accessed by polling thread
+        private List<ConsumerRecord<byte[], byte[]>> pending = new ArrayList<>();
+        private final Deque<List<ConsumerRecord<byte[], byte[]>>> queue = new ArrayDeque<>();
+        private int queuedRecords;
+        private boolean running;
+        private boolean stopped;
+        private long writtenOffset = -1;
+        private long failedOffset = -1;
+
+        private Lane(TopicPartition tp) {
+            this.tp = tp;
+        }
+
+        private void add(ConsumerRecord<byte[], byte[]> record) {
+            pending.add(record);
+            if(pending.size() >= batchSize) {
+                submitPending();
+            }
+        }
+
+        private void submitPending() {
+            if(pending.isEmpty()) {
+                return;
+            }
+            List<ConsumerRecord<byte[], byte[]>> batch = pending;
+            pending = new ArrayList<>();
+            synchronized (this) {
+                if(stopped || failedOffset >= 0) {
+                    //records are consumed again after rewind
+                    return;
+                }
+                queue.addLast(batch);
+                queuedRecords += batch.size();
+                if(!running) {
+                    running = true;
+                    workers.execute(this::process);
+                }
+            }
+        }
+
+        private void process() {
+            while (true) {
+                List<ConsumerRecord<byte[], byte[]>> batch;
+                synchronized (this) {
+                    batch = queue.peekFirst();
+                    if(batch == null || stopped || failedOffset >= 0) {
+                        running = false;
+                        notifyAll();
+                        return;
+                    }
+                }
+                List<Map<String, Object>> rows = new ArrayList<>(batch.size());
+                batch.forEach(record -> rows.add(IngestPipeline.toRow(record)));
+                try {
+                    writer.apply(rows).toCompletableFuture().join();
+                    recordsWritten.addAndGet(batch.size());
+                    batchesWritten.incrementAndGet();
+                    synchronized (this) {
+                        queue.pollFirst();
+                        queuedRecords -= batch.size();
+                        writtenOffset = batch.get(batch.size() - 1).offset();
+                    }
+                } catch (Exception ex) {
+                    log.error("Writing batch of " + batch.size() + " records from " + tp
+                            + " failed. Will consume them again.", ex);
+                    batchesFailed.incrementAndGet();
+                    synchronized (this) {
+                        failedOffset = batch.get(0).offset();
+                        queue.clear();
+                        queuedRecords = 0;
+                    }
+                }
+            }
+        }
+
+        private synchronized boolean isBusy() {
+            return running || writtenOffset >= 0 || failedOffset >= 0;
+        }
+
+        private synchronized int queuedRecords() {
+            return queuedRecords + pending.size();
+        }
+
+        private synchronized void takeWritten(Map<TopicPartition, OffsetAndMetadata> commit,
+                                              Map<TopicPartition, Long> rewind) {
+            if(writtenOffset >= 0) {
+                commit.put(tp, new OffsetAndMetadata(writtenOffset + 1));
+                writtenOffset = -1;
+            }
+            if(failedOffset >= 0 && !running) {
+                rewind.put(tp, failedOffset);
+                failedOffset = -1;
+            }
+        }
+
+        private synchronized boolean awaitIdle(long deadline) {
+            try {
+                while (running) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if(wait <= 0) {
+                        return false;
+                    }
+                    wait(wait);
+                }
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            queue.clear();
+            queuedRecords = 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.mz.example.kafka;
+
+import com.mz.example.timeline.TimelineEvent;
+import com.mz.example.timeline.TimelineLog;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pauses and resumes consumer partitions for independent reasons. Partition is resumed only when all reasons it was
+ * paused for are lifted, so eg.: backpressure of ingest pipeline does not resume partition paused because neo4j leader
+ * is in remote data center. Tracks time each partition spent paused for each reason.<br/>
+ * <b>NOTE:</b> pause and resume must be called from polling thread as Kafka consumer is not thread safe.
+ */
+@Slf4j
+class PartitionPauses {
+
+    enum Reason {
+        /** ingest pipeline has too many records waiting for the partition */
+        BACKPRESSURE,
+        /** neo4j leader the partition is written to is in remote data center */
+        REMOTE_LEADER,
+        /** partition written to remote neo4j leader exceeded its rate */
+        THROTTLE
+    }
+
+    private final Consumer<?, ?> consumer;
+    private final MeterRegistry meterRegistry;
+    private final TimelineLog timelineLog;
+    //pause start per reason of currently paused partitions
+    private final Map<TopicPartition, Map<Reason, Long>> pausedSince = new HashMap<>();
+    private final Map<TopicPartition, Map<Reason, Long>> pausedMillis = new HashMap<>();
+
+    PartitionPauses(Consumer<?, ?> consumer, MeterRegistry meterRegistry, TimelineLog timelineLog) {
+        this.consumer = consumer;
+        this.meterRegistry = meterRegistry;
+        this.timelineLog = timelineLog;
+        Gauge.builder("kafka.partitions.paused", this, PartitionPauses::pausedPartitions).register(meterRegistry);
+    }
+
+    Set<TopicPartition> assignment() {
+        return consumer.assignment();
+    }
+
+    synchronized boolean isPaused(TopicPartition tp, Reason reason) {
+        return pausedSince.getOrDefault(tp, Collections.emptyMap()).containsKey(reason);
+    }
+
+    synchronized void pause(Collection<TopicPartition> partitions, Reason reason) {
+        long now = System.currentTimeMillis();
+        List<TopicPartition> toPause = new ArrayList<>();
+        for (TopicPartition tp : partitions) {
+            Map<Reason, Long> reasons = pausedSince.computeIfAbsent(tp, p -> new EnumMap<>(Reason.class));
+            if(reasons.isEmpty()) {
+                toPause.add(tp);
+            }
+            if(reasons.putIfAbsent(reason, now) == null) {
+                timelineLog.record(TimelineEvent.Type.PARTITION_PAUSED, tp.topic(), tp.partition(), reason.name());
+            }
+        }
+        if(!toPause.isEmpty()) {
+            log.debug("Pausing partitions " + toPause + ", reason: " + reason);
+            consumer.pause(toPause);
+        }
+    }
+
+    synchronized void resume(Collection<TopicPartition> partitions, Reason reason) {
+        long now = System.currentTimeMillis();
+        List<TopicPartition> toResume = new ArrayList<>();
+        for (TopicPartition tp : partitions) {
+            Map<Reason, Long> reasons = pausedSince.get(tp);
+            if(reasons == null || !reasons.containsKey(reason)) {
+                continue;
+            }
+            recordPaused(tp, reason, now - reasons.remove(reason));
+            timelineLog.record(TimelineEvent.Type.PARTITION_RESUMED, tp.topic(), tp.partition(), reason.name());
+            if(reasons.isEmpty()) {
+                pausedSince.remove(tp);
+                toResume.add(tp);
+            }
+        }
+        if(!toResume.isEmpty()) {
+            log.debug("Resuming partitions " + toResume + ", reason lifted: " + reason);
+            consumer.resume(toResume);
+        }
+    }
+
+    /**
+     * Should be called when partitions are revoked or lost - consumer does not keep pause of partitions that are not
+     * assigned to it.
+     */
+    synchronized void forget(Collection<TopicPartition> partitions) {
+        long now = System.currentTimeMillis();
+        for (TopicPartition tp : partitions) {
+            Map<Reason, Long> reasons = pausedSince.remove(tp);
+            if(reasons != null) {
+                reasons.forEach((reason, since) -> recordPaused(tp, reason, now - since));
+            }
+        }
+    }
+
+    private void recordPaused(TopicPartition tp, Reason reason, long millis) {
+        pausedMillis.computeIfAbsent(tp, p -> new EnumMap<>(Reason.class)).merge(reason, millis, Long::sum);
+        Timer.builder("kafka.partition.paused")
+                .tags("topic", tp.topic(), "reason", reason.name().toLowerCase())
+                .register(meterRegistry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized int pausedPartitions() {
+        return pausedSince.size();
+    }
+
+    /**
+     * @return partitions that were paused at least once, with time paused so far including current pause
+     */
+    synchronized List<PausedPartition> getPausedPartitions() {
+        long now = System.currentTimeMillis();
+        Set<TopicPartition> partitions = new TreeSet<>(Comparator.comparing(TopicPartition::topic)
+                .thenComparingInt(TopicPartition::partition));
+        partitions.addAll(pausedMillis.keySet());
+        partitions.addAll(pausedSince.keySet());
+        List<PausedPartition> ret = new ArrayList<>();
+        for (TopicPartition tp : partitions) {
+            Map<Reason, Long> current = pausedSince.getOrDefault(tp, Collections.emptyMap());
+            Map<Reason, Long> total = new EnumMap<>(Reason.class);
+            total.putAll(pausedMillis.getOrDefault(tp, Collections.emptyMap()));
+            current.forEach((reason, since) -> total.merge(reason, now - since, Long::sum));
+            ret.add(new PausedPartition(tp.topic(), tp.partition(), new TreeSet<>(current.keySet()), total));
+        }
+        return ret;
+    }
+
+    @Value
+    static class PausedPartition {
+        String topic;
+        int partition;
+        /** reasons partition is currently paused for, empty when it is not paused */
+        Set<Reason> pausedFor;
+        Map<Reason, Long> pausedMs;
+    }
+}
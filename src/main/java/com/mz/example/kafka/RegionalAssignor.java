@@ -1,30 +1,47 @@
 package com.mz.example.kafka;
 
+import com.mz.example.neo4j.Neo4jConfiguration;
+import com.mz.example.neo4j.Neo4jRoutingTable;
 import com.mz.example.neo4j.Neo4jService;
+import com.mz.example.timeline.TimelineEvent;
+import com.mz.example.timeline.TimelineLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
 import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor;
 import org.apache.kafka.clients.consumer.RangeAssignor;
+import org.apache.kafka.common.Cluster;
 import org.apache.kafka.common.Configurable;
 import org.apache.kafka.common.TopicPartition;
-import org.apache.kafka.common.protocol.types.*;
 
+import java.io.Closeable;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
-public class RegionalAssignor extends RangeAssignor implements ConsumerPartitionAssignor, Configurable {
+public class RegionalAssignor extends RangeAssignor implements ConsumerPartitionAssignor, Configurable, Closeable {
 
     private static final String REGIONAL_ASSIGNOR_NAME = "regional-assignor";
-    private static final String ELIGIBLE_NEO4J_LEADERS_KEY_NAME = "eligible-neo4j-leaders";
-    private static final Schema REGIONAL_ASSIGNOR_USER_DATA = new Schema(
-            new Field(ELIGIBLE_NEO4J_LEADERS_KEY_NAME, new ArrayOf(Type.STRING))
-    );
-
 
     private Neo4jService neo4jService;
-    private ByteBuffer buffer;
+    private TopicDatabases topicDatabases;
+    private final ConcurrentMap<String, Neo4jLeaderLookup> leaderLookups = new ConcurrentHashMap<>();
+    private String topologyDatabase;
+    private long leaderLookupBudgetMs;
+    private long leaderRefreshIntervalMs;
+    private long leaderSnapshotMaxAgeMs;
+    private AssignorMetrics metrics;
+    private EligibleServersCodec codec;
+    private LatencyProber latencyProber;
+    private long latencySlackMicros;
+    private TimelineLog timelineLog;
 
     /**
      * Is called on Kafka consumer creation (constructor).
@@ -39,6 +56,127 @@ public class RegionalAssignor extends RangeAssignor implements ConsumerPartition
                     + KafkaConfiguration.NEO4J_SERVICE_PROPERTY);
         }
         this.neo4jService = retrieveNeo4jService(configs);
+        this.metrics = new AssignorMetrics(retrieveMeterRegistry(configs), name());
+        this.codec = new EligibleServersCodec(retrieveBoolean(configs, KafkaConfiguration.COMPACT_USER_DATA_PROPERTY,
+                KafkaConfiguration.DEFAULT_COMPACT_USER_DATA));
+        this.topicDatabases = retrieveTopicDatabases(configs);
+        this.timelineLog = retrieveTimelineLog(configs);
+        registerForClose(configs);
+        this.leaderLookupBudgetMs = retrieveMillis(configs, KafkaConfiguration.LEADER_LOOKUP_BUDGET_MS_PROPERTY,
+                KafkaConfiguration.DEFAULT_LEADER_LOOKUP_BUDGET_MS);
+        this.leaderRefreshIntervalMs = retrieveMillis(configs, KafkaConfiguration.LEADER_REFRESH_INTERVAL_MS_PROPERTY,
+                KafkaConfiguration.DEFAULT_LEADER_REFRESH_INTERVAL_MS);
+        this.leaderSnapshotMaxAgeMs = retrieveMillis(configs, KafkaConfiguration.LEADER_SNAPSHOT_MAX_AGE_MS_PROPERTY,
+                KafkaConfiguration.DEFAULT_LEADER_SNAPSHOT_MAX_AGE_MS);
+        Set<String> databases = new LinkedHashSet<>(topicDatabases.getDatabases());
+        if(databases.isEmpty()) {
+            databases.add(Neo4jConfiguration.NEO4J_DATABASE_NAME);
+        }
+        //all databases are hosted by same cluster, so topology is taken from routing table of one of them
+        this.topologyDatabase = databases.iterator().next();
+        databases.forEach(this::leaderLookup);
+        long latencyProbeIntervalMs = retrieveMillis(configs, KafkaConfiguration.LATENCY_PROBE_INTERVAL_MS_PROPERTY,
+                KafkaConfiguration.DEFAULT_LATENCY_PROBE_INTERVAL_MS);
+        if(latencyProbeIntervalMs > 0) {
+            this.latencyProber = new LatencyProber(codec::getTopology, latencyProbeIntervalMs);
+        }
+        this.latencySlackMicros = TimeUnit.MILLISECONDS.toMicros(retrieveMillis(configs,
+                KafkaConfiguration.LATENCY_SLACK_MS_PROPERTY, KafkaConfiguration.DEFAULT_LATENCY_SLACK_MS));
+    }
+
+    private long retrieveMillis(Map<String, ?> configs, String property, long defaultValue) {
+        Object value = configs.get(property);
+        if(value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Provided " + property + " is not a number: " + value, ex);
+        }
+    }
+
+    /**
+     * Topic to database mapping is optional, all topics are written to default database when it is not provided.
+     */
+    private TopicDatabases retrieveTopicDatabases(Map<String, ?> configs) {
+        Object topicDatabases = configs.get(KafkaConfiguration.TOPIC_DATABASES_PROPERTY);
+        if(topicDatabases == null) {
+            return new TopicDatabases(Collections.emptyMap());
+        }
+        if(!(topicDatabases instanceof TopicDatabases)) {
+            throw new IllegalArgumentException("Provided "
+                    + KafkaConfiguration.TOPIC_DATABASES_PROPERTY + " is not an instance of "
+                    + TopicDatabases.class.getName());
+        }
+        return (TopicDatabases) topicDatabases;
+    }
+
+    /**
+     * Timeline log is optional, assignment decisions are not recorded when it is not provided.
+     */
+    private TimelineLog retrieveTimelineLog(Map<String, ?> configs) {
+        Object timelineLog = configs.get(KafkaConfiguration.TIMELINE_LOG_PROPERTY);
+        if(timelineLog != null && !(timelineLog instanceof TimelineLog)) {
+            throw new IllegalArgumentException("Provided "
+                    + KafkaConfiguration.TIMELINE_LOG_PROPERTY + " is not an instance of "
+                    + TimelineLog.class.getName());
+        }
+        return (TimelineLog) timelineLog;
+    }
+
+    /**
+     * Registry of assignors is optional, whoever created the assignor closes it when it is not provided.
+     */
+    private void registerForClose(Map<String, ?> configs) {
+        Object assignors = configs.get(KafkaConfiguration.ASSIGNORS_PROPERTY);
+        if(assignors == null) {
+            return;
+        }
+        if(!(assignors instanceof RegionalAssignors)) {
+            throw new IllegalArgumentException("Provided "
+                    + KafkaConfiguration.ASSIGNORS_PROPERTY + " is not an instance of "
+                    + RegionalAssignors.class.getName());
+        }
+        ((RegionalAssignors) assignors).add(this);
+    }
+
+    /**
+     * Leader is queried from Neo4j, cached routing table may show leader which changed up to ttl ago. Server topology
+     * used by compact user data is refreshed together with the leader.
+     */
+    private Neo4jLeaderLookup leaderLookup(String database) {
+        return leaderLookups.computeIfAbsent(database, db -> new Neo4jLeaderLookup(
+                () -> {
+                    Neo4jRoutingTable routingTable = neo4jService.getFreshRoutingTable(db,
+                            Neo4jConfiguration.NEO4J_LB_POLICY);
+                    if(db.equals(topologyDatabase)) {
+                        codec.topologyChanged(ServerTopology.of(routingTable));
+                    }
+                    return routingTable.getLeaderAddress();
+                },
+                leaderLookupBudgetMs, leaderRefreshIntervalMs, leaderSnapshotMaxAgeMs));
+    }
+
+    private boolean retrieveBoolean(Map<String, ?> configs, String property, boolean defaultValue) {
+        Object value = configs.get(property);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * Meter registry is optional, global registry is used when it is not provided.
+     */
+    private MeterRegistry retrieveMeterRegistry(Map<String, ?> configs) {
+        Object meterRegistry = configs.get(KafkaConfiguration.METER_REGISTRY_PROPERTY);
+        if(meterRegistry == null) {
+            return Metrics.globalRegistry;
+        }
+        if(!(meterRegistry instanceof MeterRegistry)) {
+            throw new IllegalArgumentException("Provided "
+                    + KafkaConfiguration.METER_REGISTRY_PROPERTY + " is not an instance of "
+                    + MeterRegistry.class.getName());
+        }
+        return (MeterRegistry) meterRegistry;
     }
 
     private Neo4jService retrieveNeo4jService(Map<String, ?> configs) {
@@ -58,62 +196,222 @@ public class RegionalAssignor extends RangeAssignor implements ConsumerPartition
 
     @Override
     public ByteBuffer subscriptionUserData(Set<String> topics) {
-        return serializeConsumerData(neo4jService.getSameDCServers());
+        return serializeConsumerData(getSameDCServers(), getLatencyMicros());
+    }
+
+    protected List<String> getSameDCServers() {
+        return neo4jService.getSameDCServers();
+    }
+
+    /**
+     * @return latency to neo4j servers measured by this consumer, empty when latency probing is disabled
+     */
+    protected Map<String, Integer> getLatencyMicros() {
+        return latencyProber == null ? Collections.emptyMap() : latencyProber.getLatencyMicros();
     }
 
-    private Map<String, Subscription> restrictToConsumersWithinSameDataCenterAsNeo4jLeader(Map<String, Subscription> subscriptions) {
-        Optional<String> neo4jLeader = neo4jService.getCurrentRoutingTableViaNeo4jQuery().getLeaderAddress();
+    private Map<String, Subscription> restrictToConsumersWithinSameDataCenterAsNeo4jLeader(
+            Optional<String> neo4jLeader, Map<String, Subscription> subscriptions) {
         Map<String, Subscription> restricted;
         if (neo4jLeader.isPresent()) {
-            restricted = subscriptions.entrySet().stream().filter(memberSub -> {
-                List<String> eligibleNeo4jLeaders = deserializeConsumerData(memberSub.getValue().userData());
-                return eligibleNeo4jLeaders.contains(neo4jLeader.get());
-            }).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            restricted = restrictToConsumersClosestTo(neo4jLeader.get(), subscriptions);
         } else {
             log.info("No neo4j leader found. Doing assignment on all consumers.");
+            metrics.fallback(AssignorMetrics.FALLBACK_NO_LEADER);
             restricted = subscriptions;
         }
 
         Map<String, Subscription> ret = restricted;
         if(restricted.isEmpty()) {
             log.info("No consumers in same data center as neo4j leader found. Doing assignment on all consumers.");
+            metrics.fallback(AssignorMetrics.FALLBACK_NO_ELIGIBLE_CONSUMERS);
             ret = subscriptions;
         }
         return ret;
     }
 
+    /**
+     * When any consumer measured latency to the leader, consumers within latency slack from the fastest one are
+     * eligible. Consumers without latency to the leader, eg.: with probing disabled or running version that does not
+     * send it, are eligible when they have the leader among their neo4j.sameDCServers.
+     */
+    private Map<String, Subscription> restrictToConsumersClosestTo(String neo4jLeader,
+                                                                   Map<String, Subscription> subscriptions) {
+        Map<String, MemberLocality> localities = new HashMap<>();
+        subscriptions.forEach((memberId, subscription) -> localities.put(memberId, memberLocality(subscription)));
+        OptionalInt fastest = localities.values().stream()
+                .map(locality -> locality.getLatencyMicros().get(neo4jLeader))
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .min();
+        Map<String, Subscription> restricted = new HashMap<>();
+        if(fastest.isPresent()) {
+            log.info("Fastest consumer reaches neo4j leader in " + fastest.getAsInt() + " us. Consumers within "
+                    + latencySlackMicros + " us are eligible.");
+            metrics.eligibility(AssignorMetrics.ELIGIBILITY_LATENCY);
+            localities.forEach((memberId, locality) -> {
+                Integer latency = locality.getLatencyMicros().get(neo4jLeader);
+                boolean eligible = latency == null
+                        ? locality.getEligibleServers().contains(neo4jLeader)
+                        : latency - fastest.getAsInt() <= latencySlackMicros;
+                if(eligible) {
+                    restricted.put(memberId, subscriptions.get(memberId));
+                }
+            });
+        } else {
+            metrics.eligibility(AssignorMetrics.ELIGIBILITY_STATIC);
+            localities.forEach((memberId, locality) -> {
+                if(locality.getEligibleServers().contains(neo4jLeader)) {
+                    restricted.put(memberId, subscriptions.get(memberId));
+                }
+            });
+        }
+        return restricted;
+    }
+
+    /**
+     * Partitions of topics written to same database are assigned among consumers close to leader of that database.
+     * Leaders of all databases are looked up concurrently and assignment never blocks longer than leader lookup
+     * budget. When fresh leader is not available in time last known leader is used, and when there is none plain range
+     * assignment is done on all consumers.
+     */
     @Override
     public Map<String, List<TopicPartition>> assign(Map<String, Integer> partitionsPerTopic, Map<String, Subscription> subscriptions) {
-        long time = System.currentTimeMillis();
+        Timer.Sample sample = metrics.startAssignment();
         log.info("Running " + name() + " partition assignment.");
-        Map<String, List<TopicPartition>> ret = new HashMap<>(super.assign(partitionsPerTopic,
-                restrictToConsumersWithinSameDataCenterAsNeo4jLeader(subscriptions)));
+        Map<String, Map<String, Integer>> partitionsPerDatabase = new TreeMap<>();
+        partitionsPerTopic.forEach((topic, partitions) -> partitionsPerDatabase
+                .computeIfAbsent(topicDatabases.getDatabase(topic), database -> new HashMap<>())
+                .put(topic, partitions));
+        Map<String, Neo4jLeaderLookup> lookups = new LinkedHashMap<>();
+        partitionsPerDatabase.keySet().forEach(database -> lookups.put(database, leaderLookup(database)));
+        Map<String, Neo4jLeaderLookup.Result> leaders = Neo4jLeaderLookup.lookupAll(lookups);
+
+        Map<String, List<TopicPartition>> ret = new HashMap<>();
+        Set<String> eligibleMembers = new HashSet<>();
+        partitionsPerDatabase.forEach((database, databasePartitions) -> {
+            Map<String, Subscription> subscribed = subscribedToAny(databasePartitions.keySet(), subscriptions);
+            Map<String, Subscription> eligible = restrictToEligible(database, leaders.get(database), subscribed);
+            recordAssignment(database, leaders.get(database), subscribed.size(), eligible.size(), databasePartitions);
+            eligibleMembers.addAll(eligible.keySet());
+            assignEligible(databasePartitions, eligible, subscriptions).forEach((memberId, partitions) ->
+                    ret.computeIfAbsent(memberId, id -> new ArrayList<>()).addAll(partitions));
+        });
+        metrics.members(subscriptions.size(), eligibleMembers.size());
         subscriptions.forEach((memberId, subscription) -> ret.putIfAbsent(memberId, Collections.emptyList()));
-        time = System.currentTimeMillis() - time;
+        long time = metrics.stopAssignment(sample);
         log.info("Finished partition assignment took: " + time + " ms.");
         return ret;
     }
 
-    private ByteBuffer serializeConsumerData(List<String> eligibleNeo4jLeaders) {
-        Struct struct = new Struct(REGIONAL_ASSIGNOR_USER_DATA);
-        struct.set(ELIGIBLE_NEO4J_LEADERS_KEY_NAME, eligibleNeo4jLeaders.toArray());
-        ByteBuffer buffer = ByteBuffer.allocate(REGIONAL_ASSIGNOR_USER_DATA.sizeOf(struct));
-        REGIONAL_ASSIGNOR_USER_DATA.write(buffer, struct);
-        buffer.flip();
-        return buffer;
+    /**
+     * Sends fingerprints of neo4j server topologies known by this assignment leader to all consumers, see
+     * {@link EligibleServersCodec}.
+     */
+    @Override
+    public GroupAssignment assign(Cluster metadata, GroupSubscription groupSubscription) {
+        GroupAssignment assignment = super.assign(metadata, groupSubscription);
+        ByteBuffer knownTopologies = codec.encodeKnownTopologies();
+        Map<String, Assignment> ret = new HashMap<>();
+        assignment.groupAssignment().forEach((memberId, memberAssignment) -> ret.put(memberId,
+                new Assignment(memberAssignment.partitions(), knownTopologies.duplicate())));
+        return new GroupAssignment(ret);
+    }
+
+    @Override
+    public void onAssignment(Assignment assignment, ConsumerGroupMetadata metadata) {
+        codec.topologiesAcknowledged(assignment.userData());
+    }
+
+    private void recordAssignment(String database, Neo4jLeaderLookup.Result leader, int members, int eligibleMembers,
+                                  Map<String, Integer> partitionsPerTopic) {
+        if(timelineLog != null) {
+            timelineLog.record(TimelineEvent.Type.ASSIGNMENT, name(), database, leader.getLeader().orElse(null),
+                    leader.getPath().name(), members, eligibleMembers,
+                    partitionsPerTopic.values().stream().mapToInt(Integer::intValue).sum());
+        }
+    }
+
+    private static Map<String, Subscription> subscribedToAny(Set<String> topics,
+                                                             Map<String, Subscription> subscriptions) {
+        return subscriptions.entrySet().stream()
+                .filter(memberSub -> memberSub.getValue().topics().stream().anyMatch(topics::contains))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private Map<String, Subscription> restrictToEligible(String database, Neo4jLeaderLookup.Result leader,
+                                                         Map<String, Subscription> subscriptions) {
+        metrics.leaderLookup(database, leader.getPath());
+        if(leader.getPath() == Neo4jLeaderLookup.Path.NONE) {
+            log.warn("Neo4j leader of " + database + " database unknown. Falling back to range assignment on all "
+                    + "consumers.");
+            metrics.fallback(AssignorMetrics.FALLBACK_LEADER_UNKNOWN);
+            return subscriptions;
+        }
+        log.info("Using " + leader.getPath() + " neo4j leader of " + database + " database: "
+                + leader.getLeader().orElse("none"));
+        return restrictToConsumersWithinSameDataCenterAsNeo4jLeader(leader.getLeader(), subscriptions);
+    }
+
+    /**
+     * @return neo4j servers given consumer can write to and its latency to them, sent in subscription user data
+     */
+    protected MemberLocality memberLocality(Subscription subscription) {
+        return deserializeConsumerData(subscription.userData());
+    }
+
+    /**
+     * Assigns partitions among consumers eligible to write to current neo4j leader. Called once for each database
+     * with partitions of its topics. Consumers without assignment are added by {@link #assign(Map, Map)}.
+     *
+     * @param eligible consumers to assign partitions to
+     * @param subscriptions all consumers within the group
+     */
+    protected Map<String, List<TopicPartition>> assignEligible(Map<String, Integer> partitionsPerTopic,
+                                                                Map<String, Subscription> eligible,
+                                                                Map<String, Subscription> subscriptions) {
+        return super.assign(partitionsPerTopic, eligible);
     }
 
-    private List<String> deserializeConsumerData(ByteBuffer consumerData) {
+    protected AssignorMetrics metrics() {
+        return metrics;
+    }
+
+    ByteBuffer serializeConsumerData(List<String> eligibleNeo4jLeaders, Map<String, Integer> latencyMicros) {
+        ByteBuffer userData = codec.encode(eligibleNeo4jLeaders, latencyMicros);
+        metrics.userDataSize(userData.remaining());
+        return userData;
+    }
+
+    /**
+     * Does not change position of consumer data buffer, so it can be read again.
+     */
+    MemberLocality deserializeConsumerData(ByteBuffer consumerData) {
         try {
-            Struct struct = REGIONAL_ASSIGNOR_USER_DATA.read(consumerData);
-            return Arrays.stream(struct.getArray(ELIGIBLE_NEO4J_LEADERS_KEY_NAME))
-                    .map(el -> (String) el).collect(Collectors.toList());
+            return codec.decode(consumerData);
         } catch (Throwable ex) {
             log.error("Error deserializing consumer data during partition assignment.", ex);
-            return Collections.emptyList();
+            metrics.userDataDecodeFailure();
+            return MemberLocality.UNKNOWN;
         }
     }
 
+    /**
+     * Stops leader lookup and latency probing threads. Kafka does not close assignors, see {@link RegionalAssignors}.
+     */
+    @Override
+    public void close() {
+        leaderLookups.values().forEach(Neo4jLeaderLookup::close);
+        leaderLookups.clear();
+        if(latencyProber != null) {
+            latencyProber.close();
+        }
+    }
+
+    protected EligibleServersCodec codec() {
+        return codec;
+    }
+
     //<editor-fold desc="NOT USED - but you can try it out">
     /**
      * If consumer will not make assignment within session.timeout.ms it will be removed from the group.
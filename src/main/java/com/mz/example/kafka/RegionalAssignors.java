@@ -0,0 +1,23 @@
+package com.mz.example.kafka;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Assignors Kafka consumer created and configured. Kafka does not close assignors together with the consumer, so
+ * {@link KafkaReader} closes them after closing the consumer - they run leader lookup and latency probing threads.
+ */
+public class RegionalAssignors implements AutoCloseable {
+
+    private final List<RegionalAssignor> assignors = new CopyOnWriteArrayList<>();
+
+    void add(RegionalAssignor assignor) {
+        assignors.add(assignor);
+    }
+
+    @Override
+    public void close() {
+        assignors.forEach(RegionalAssignor::close);
+        assignors.clear();
+    }
+}
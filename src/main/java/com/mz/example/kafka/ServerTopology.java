@@ -0,0 +1,61 @@
+package com.mz.example.kafka;
+
+import com.mz.example.neo4j.Neo4jRoutingTable;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Sorted list of neo4j servers that can become the leader - routers and current writer. Routers are not restricted by
+ * load balancing policy, so all consumers see same list and servers can be sent by their index within the list.
+ * Fingerprint identifies the list, so index can be resolved only against same topology.
+ */
+@ToString(of = {"fingerprint", "servers"})
+@EqualsAndHashCode(of = "servers")
+class ServerTopology {
+
+    private final List<String> servers;
+    private final Map<String, Integer> indexes;
+    private final int fingerprint;
+
+    ServerTopology(Collection<String> servers) {
+        this.servers = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(servers)));
+        Map<String, Integer> indexes = new HashMap<>();
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < this.servers.size(); i++) {
+            indexes.put(this.servers.get(i), i);
+            crc.update(this.servers.get(i).getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        this.indexes = indexes;
+        this.fingerprint = (int) crc.getValue();
+    }
+
+    static ServerTopology of(Neo4jRoutingTable routingTable) {
+        Set<String> servers = new HashSet<>(routingTable.getAddresses(Neo4jRoutingTable.ROUTE_ROLE));
+        servers.addAll(routingTable.getAddresses(Neo4jRoutingTable.WRITE_ROLE));
+        return new ServerTopology(servers);
+    }
+
+    int getFingerprint() {
+        return fingerprint;
+    }
+
+    int size() {
+        return servers.size();
+    }
+
+    String get(int index) {
+        return servers.get(index);
+    }
+
+    /**
+     * @return index of the server or -1 when server is not part of this topology
+     */
+    int indexOf(String server) {
+        return indexes.getOrDefault(server, -1);
+    }
+}
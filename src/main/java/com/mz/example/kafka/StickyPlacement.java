@@ -0,0 +1,102 @@
+package com.mz.example.kafka;
+
+import lombok.Value;
+import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor.Subscription;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+
+/**
+ * Balanced partition placement that keeps partitions with their current owners whenever possible. Each member gets
+ * either <code>partitions / members</code> or one more partition, and only partitions exceeding that quota, owned by
+ * members outside of the placement or not owned at all are moved.
+ */
+final class StickyPlacement {
+
+    @Value
+    static class Result {
+        Map<String, List<TopicPartition>> assignment;
+        /** partitions taken away from previous owner */
+        int moved;
+    }
+
+    private StickyPlacement() {
+    }
+
+    /**
+     * @param members consumers partitions can be placed on
+     * @param currentOwners current owner of each partition, may contain consumers not present in members
+     */
+    static Result place(Map<String, Integer> partitionsPerTopic, Map<String, Subscription> members,
+                        Map<TopicPartition, String> currentOwners) {
+        Map<String, List<TopicPartition>> assignment = new HashMap<>();
+        members.keySet().forEach(memberId -> assignment.put(memberId, new ArrayList<>()));
+        if(members.isEmpty()) {
+            return new Result(assignment, 0);
+        }
+
+        Map<String, List<String>> membersPerTopic = new TreeMap<>();
+        members.forEach((memberId, subscription) -> subscription.topics().stream()
+                .filter(partitionsPerTopic::containsKey)
+                .forEach(topic -> membersPerTopic.computeIfAbsent(topic, t -> new ArrayList<>()).add(memberId)));
+        membersPerTopic.values().forEach(Collections::sort);
+
+        List<TopicPartition> partitions = new ArrayList<>();
+        membersPerTopic.keySet().forEach(topic -> {
+            for (int partition = 0; partition < partitionsPerTopic.get(topic); partition++) {
+                partitions.add(new TopicPartition(topic, partition));
+            }
+        });
+        int minQuota = partitions.size() / members.size();
+        int extraSlots = partitions.size() % members.size();
+
+        //keep up to minimal quota with current owners, then one more while extra slots last
+        List<TopicPartition> overQuota = new ArrayList<>();
+        List<TopicPartition> unassigned = new ArrayList<>();
+        for (TopicPartition tp : partitions) {
+            String owner = currentOwners.get(tp);
+            if(owner != null && assignment.containsKey(owner) && members.get(owner).topics().contains(tp.topic())) {
+                List<TopicPartition> owned = assignment.get(owner);
+                if(owned.size() < minQuota) {
+                    owned.add(tp);
+                } else {
+                    overQuota.add(tp);
+                }
+            } else {
+                unassigned.add(tp);
+            }
+        }
+        for (TopicPartition tp : overQuota) {
+            List<TopicPartition> owned = assignment.get(currentOwners.get(tp));
+            if(owned.size() == minQuota && extraSlots > 0) {
+                owned.add(tp);
+                extraSlots--;
+            } else {
+                unassigned.add(tp);
+            }
+        }
+
+        int moved = 0;
+        for (TopicPartition tp : unassigned) {
+            String target = leastLoaded(membersPerTopic.get(tp.topic()), assignment);
+            assignment.get(target).add(tp);
+            if(currentOwners.containsKey(tp) && !target.equals(currentOwners.get(tp))) {
+                moved++;
+            }
+        }
+        return new Result(assignment, moved);
+    }
+
+    private static String leastLoaded(List<String> candidates, Map<String, List<TopicPartition>> assignment) {
+        String ret = null;
+        int min = Integer.MAX_VALUE;
+        for (String candidate : candidates) {
+            int size = assignment.get(candidate).size();
+            if(size < min) {
+                min = size;
+                ret = candidate;
+            }
+        }
+        return ret;
+    }
+}
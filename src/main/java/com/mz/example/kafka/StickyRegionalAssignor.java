@@ -0,0 +1,187 @@
+package com.mz.example.kafka;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.types.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RegionalAssignor} that keeps partitions with their current owners. Eager protocol revokes all partitions
+ * before consumer joins the group, so each consumer sends partitions it owned in subscription user data next to
+ * eligible neo4j leaders. Existing owners eligible to write to current neo4j leader keep their partitions and only
+ * partitions needed for balance are moved - see {@link StickyPlacement}.
+ */
+@Slf4j
+public class StickyRegionalAssignor extends RegionalAssignor {
+
+    private static final String STICKY_REGIONAL_ASSIGNOR_NAME = "sticky-regional-assignor";
+    private static final String ELIGIBLE_NEO4J_LEADERS_KEY_NAME = "eligible-neo4j-leaders";
+    private static final String OWNED_PARTITIONS_KEY_NAME = "owned-partitions";
+    private static final String GENERATION_KEY_NAME = "generation";
+    private static final String TOPIC_KEY_NAME = "topic";
+    private static final String PARTITIONS_KEY_NAME = "partitions";
+    private static final Schema TOPIC_PARTITIONS = new Schema(
+            new Field(TOPIC_KEY_NAME, Type.STRING),
+            new Field(PARTITIONS_KEY_NAME, new ArrayOf(Type.INT32))
+    );
+    //version 0 - written before versioning was introduced, starts with int32 length of eligible neo4j leaders
+    private static final Schema STICKY_REGIONAL_ASSIGNOR_USER_DATA_V0 = new Schema(
+            new Field(ELIGIBLE_NEO4J_LEADERS_KEY_NAME, new ArrayOf(Type.STRING)),
+            new Field(OWNED_PARTITIONS_KEY_NAME, new ArrayOf(TOPIC_PARTITIONS)),
+            new Field(GENERATION_KEY_NAME, Type.INT32)
+    );
+    //version 1 - prefixed with version byte, eligible neo4j leaders encoded by EligibleServersCodec
+    private static final byte STICKY_USER_DATA_VERSION = 1;
+    private static final Schema STICKY_REGIONAL_ASSIGNOR_USER_DATA_V1 = new Schema(
+            new Field(ELIGIBLE_NEO4J_LEADERS_KEY_NAME, Type.BYTES),
+            new Field(OWNED_PARTITIONS_KEY_NAME, new ArrayOf(TOPIC_PARTITIONS)),
+            new Field(GENERATION_KEY_NAME, Type.INT32)
+    );
+    private static final int NO_GENERATION = -1;
+
+    private List<TopicPartition> ownedPartitions = Collections.emptyList();
+    private int generation = NO_GENERATION;
+    private volatile int lastMovedPartitions;
+    private final AtomicLong totalMovedPartitions = new AtomicLong();
+
+    @Value
+    private static class MemberData {
+        MemberLocality locality;
+        List<TopicPartition> ownedPartitions;
+        int generation;
+    }
+
+    @Override
+    public String name() {
+        return STICKY_REGIONAL_ASSIGNOR_NAME;
+    }
+
+    @Override
+    public ByteBuffer subscriptionUserData(Set<String> topics) {
+        return serializeMemberData(new MemberData(
+                new MemberLocality(new LinkedHashSet<>(getSameDCServers()), getLatencyMicros()),
+                ownedPartitions, generation));
+    }
+
+    @Override
+    public void onAssignment(Assignment assignment, ConsumerGroupMetadata metadata) {
+        super.onAssignment(assignment, metadata);
+        ownedPartitions = new ArrayList<>(assignment.partitions());
+        generation = metadata.generationId();
+    }
+
+    @Override
+    protected MemberLocality memberLocality(Subscription subscription) {
+        return deserializeMemberData(subscription.userData()).getLocality();
+    }
+
+    @Override
+    public Map<String, List<TopicPartition>> assign(Map<String, Integer> partitionsPerTopic,
+                                                    Map<String, Subscription> subscriptions) {
+        lastMovedPartitions = 0;
+        return super.assign(partitionsPerTopic, subscriptions);
+    }
+
+    @Override
+    protected Map<String, List<TopicPartition>> assignEligible(Map<String, Integer> partitionsPerTopic,
+                                                                Map<String, Subscription> eligible,
+                                                                Map<String, Subscription> subscriptions) {
+        //when two consumers claim same partition the one from newer generation is its owner
+        Map<TopicPartition, String> currentOwners = new HashMap<>();
+        Map<TopicPartition, Integer> ownerGenerations = new HashMap<>();
+        subscriptions.forEach((memberId, subscription) -> {
+            MemberData memberData = deserializeMemberData(subscription.userData());
+            for (TopicPartition tp : memberData.getOwnedPartitions()) {
+                Integer ownerGeneration = ownerGenerations.get(tp);
+                if(ownerGeneration == null || memberData.getGeneration() > ownerGeneration) {
+                    currentOwners.put(tp, memberId);
+                    ownerGenerations.put(tp, memberData.getGeneration());
+                }
+            }
+        });
+
+        StickyPlacement.Result placement = StickyPlacement.place(partitionsPerTopic, eligible, currentOwners);
+        lastMovedPartitions += placement.getMoved();
+        totalMovedPartitions.addAndGet(placement.getMoved());
+        metrics().partitionsMoved(placement.getMoved());
+        log.info("Sticky regional assignment moved " + placement.getMoved() + " partitions.");
+        return placement.getAssignment();
+    }
+
+    /**
+     * @return partitions moved between consumers during last assignment made by this consumer
+     */
+    public int getLastMovedPartitions() {
+        return lastMovedPartitions;
+    }
+
+    public long getTotalMovedPartitions() {
+        return totalMovedPartitions.get();
+    }
+
+    private ByteBuffer serializeMemberData(MemberData memberData) {
+        Map<String, List<Integer>> partitionsPerTopic = new TreeMap<>();
+        memberData.getOwnedPartitions().forEach(tp ->
+                partitionsPerTopic.computeIfAbsent(tp.topic(), topic -> new ArrayList<>()).add(tp.partition()));
+        List<Struct> topicPartitions = new ArrayList<>();
+        partitionsPerTopic.forEach((topic, partitions) -> {
+            Struct topicStruct = new Struct(TOPIC_PARTITIONS);
+            topicStruct.set(TOPIC_KEY_NAME, topic);
+            topicStruct.set(PARTITIONS_KEY_NAME, partitions.toArray());
+            topicPartitions.add(topicStruct);
+        });
+
+        Struct struct = new Struct(STICKY_REGIONAL_ASSIGNOR_USER_DATA_V1);
+        struct.set(ELIGIBLE_NEO4J_LEADERS_KEY_NAME, codec().encode(
+                memberData.getLocality().getEligibleServers(), memberData.getLocality().getLatencyMicros()));
+        struct.set(OWNED_PARTITIONS_KEY_NAME, topicPartitions.toArray());
+        struct.set(GENERATION_KEY_NAME, memberData.getGeneration());
+        ByteBuffer buffer = ByteBuffer.allocate(1 + STICKY_REGIONAL_ASSIGNOR_USER_DATA_V1.sizeOf(struct));
+        buffer.put(STICKY_USER_DATA_VERSION);
+        STICKY_REGIONAL_ASSIGNOR_USER_DATA_V1.write(buffer, struct);
+        buffer.flip();
+        metrics().userDataSize(buffer.remaining());
+        return buffer;
+    }
+
+    /**
+     * User data is read more than once during assignment so buffer position is not changed.
+     */
+    private MemberData deserializeMemberData(ByteBuffer consumerData) {
+        try {
+            ByteBuffer buffer = consumerData.duplicate();
+            Struct struct;
+            MemberLocality locality;
+            if(buffer.get(buffer.position()) == STICKY_USER_DATA_VERSION) {
+                buffer.get();
+                struct = STICKY_REGIONAL_ASSIGNOR_USER_DATA_V1.read(buffer);
+                locality = codec().decode(struct.getBytes(ELIGIBLE_NEO4J_LEADERS_KEY_NAME));
+            } else {
+                struct = STICKY_REGIONAL_ASSIGNOR_USER_DATA_V0.read(buffer);
+                Set<String> eligibleNeo4jLeaders = new LinkedHashSet<>();
+                for (Object leader : struct.getArray(ELIGIBLE_NEO4J_LEADERS_KEY_NAME)) {
+                    eligibleNeo4jLeaders.add((String) leader);
+                }
+                locality = new MemberLocality(eligibleNeo4jLeaders, Collections.emptyMap());
+            }
+            List<TopicPartition> owned = new ArrayList<>();
+            for (Object topicPartitions : struct.getArray(OWNED_PARTITIONS_KEY_NAME)) {
+                Struct topicStruct = (Struct) topicPartitions;
+                String topic = topicStruct.getString(TOPIC_KEY_NAME);
+                for (Object partition : topicStruct.getArray(PARTITIONS_KEY_NAME)) {
+                    owned.add(new TopicPartition(topic, (Integer) partition));
+                }
+            }
+            return new MemberData(locality, owned, struct.getInt(GENERATION_KEY_NAME));
+        } catch (Throwable ex) {
+            log.error("Error deserializing consumer data during partition assignment.", ex);
+            metrics().userDataDecodeFailure();
+            return new MemberData(MemberLocality.UNKNOWN, Collections.emptyList(), NO_GENERATION);
+        }
+    }
+}
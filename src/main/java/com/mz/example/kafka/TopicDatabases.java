@@ -0,0 +1,62 @@
+package com.mz.example.kafka;
+
+import com.mz.example.neo4j.Neo4jConfiguration;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.*;
+
+/**
+ * Neo4j database records of each consumed topic are written to. Partitions of a topic are assigned to consumers
+ * close to leader of its database, so databases with leaders in different regions do not affect each other.
+ */
+@ToString
+@EqualsAndHashCode
+public class TopicDatabases {
+
+    private final Map<String, String> databasePerTopic;
+
+    public TopicDatabases(Map<String, String> databasePerTopic) {
+        this.databasePerTopic = Collections.unmodifiableMap(new LinkedHashMap<>(databasePerTopic));
+    }
+
+    /**
+     * @param mappings <code>topic:database</code> entries, topic without database is written to
+     *                 {@link Neo4jConfiguration#NEO4J_DATABASE_NAME}
+     */
+    public static TopicDatabases parse(List<String> mappings) {
+        Map<String, String> databasePerTopic = new LinkedHashMap<>();
+        for (String mapping : mappings) {
+            String[] topicDatabase = mapping.trim().split(":", -1);
+            if(topicDatabase.length > 2 || topicDatabase[0].isEmpty()
+                    || (topicDatabase.length == 2 && topicDatabase[1].isEmpty())) {
+                throw new IllegalArgumentException("Expected topic:database mapping, was: " + mapping);
+            }
+            String database = topicDatabase.length == 2 ? topicDatabase[1] : Neo4jConfiguration.NEO4J_DATABASE_NAME;
+            String previous = databasePerTopic.put(topicDatabase[0], database);
+            if(previous != null && !previous.equals(database)) {
+                throw new IllegalArgumentException("Topic " + topicDatabase[0] + " mapped to databases " + previous
+                        + " and " + database);
+            }
+        }
+        return new TopicDatabases(databasePerTopic);
+    }
+
+    public Set<String> getTopics() {
+        return databasePerTopic.keySet();
+    }
+
+    /**
+     * @return databases in order of their first topic
+     */
+    public Set<String> getDatabases() {
+        return new LinkedHashSet<>(databasePerTopic.values());
+    }
+
+    /**
+     * @return database of given topic, {@link Neo4jConfiguration#NEO4J_DATABASE_NAME} for topics that are not mapped
+     */
+    public String getDatabase(String topic) {
+        return databasePerTopic.getOrDefault(topic, Neo4jConfiguration.NEO4J_DATABASE_NAME);
+    }
+}
@@ -0,0 +1,156 @@
+package com.mz.example.neo4j;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.internal.BoltServerAddress;
+import org.neo4j.driver.internal.DatabaseName;
+import org.neo4j.driver.internal.InternalDriver;
+import org.neo4j.driver.internal.SessionFactoryImpl;
+import org.neo4j.driver.internal.cluster.AddressSet;
+import org.neo4j.driver.internal.cluster.ClusterRoutingTable;
+import org.neo4j.driver.internal.cluster.RoutingTable;
+import org.neo4j.driver.internal.cluster.RoutingTableHandler;
+import org.neo4j.driver.internal.cluster.RoutingTableRegistry;
+import org.neo4j.driver.internal.cluster.RoutingTableRegistryImpl;
+import org.neo4j.driver.internal.cluster.loadbalancing.LoadBalancer;
+import org.neo4j.driver.internal.spi.ConnectionProvider;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Reads routing tables neo4j driver keeps in memory, without querying the cluster. Driver does not expose them, so
+ * private fields of <code>LoadBalancer</code>, <code>RoutingTableRegistryImpl</code> and
+ * <code>ClusterRoutingTable</code> are read. Fields are resolved into method handles once, when accessor is created,
+ * and checked against expected types, so incompatible driver version is reported at startup instead of on each
+ * request - accessor is then unavailable and all its methods return empty results.
+ */
+@Slf4j
+class DriverRoutingTableAccessor {
+
+    private final LoadBalancer loadBalancer;
+    private final MethodHandle routingTables;
+    private final MethodHandle routingTableHandlers;
+    private final MethodHandle getExpirationTimestamp;
+    private final MethodHandle setExpirationTimestamp;
+    private final String unavailableReason;
+
+    DriverRoutingTableAccessor(InternalDriver driver) {
+        LoadBalancer balancer = null;
+        MethodHandle tables = null, handlers = null, getExpiration = null, setExpiration = null;
+        String reason = null;
+        try {
+            ConnectionProvider provider = ((SessionFactoryImpl) driver.getSessionFactory()).getConnectionProvider();
+            if(!(provider instanceof LoadBalancer)) {
+                throw new IllegalStateException("Driver does not use routing, connection provider is "
+                        + provider.getClass().getName());
+            }
+            balancer = (LoadBalancer) provider;
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            tables = lookup.unreflectGetter(field(LoadBalancer.class, "routingTables", RoutingTableRegistry.class));
+            handlers = lookup.unreflectGetter(field(RoutingTableRegistryImpl.class, "routingTableHandlers", Map.class));
+            Field expiration = field(ClusterRoutingTable.class, "expirationTimestamp", long.class);
+            getExpiration = lookup.unreflectGetter(expiration);
+            setExpiration = lookup.unreflectSetter(expiration);
+        } catch (Exception ex) {
+            reason = ex.toString();
+            log.warn("Driver routing tables are not accessible with this neo4j driver version: " + reason);
+        }
+        this.loadBalancer = balancer;
+        this.routingTables = tables;
+        this.routingTableHandlers = handlers;
+        this.getExpirationTimestamp = getExpiration;
+        this.setExpirationTimestamp = setExpiration;
+        this.unavailableReason = reason;
+    }
+
+    private static Field field(Class<?> owner, String name, Class<?> expectedType) throws NoSuchFieldException {
+        Field field = owner.getDeclaredField(name);
+        if(Modifier.isStatic(field.getModifiers()) || !expectedType.isAssignableFrom(field.getType())) {
+            throw new NoSuchFieldException(owner.getName() + "." + name + " is " + field.getType().getName()
+                    + ", expected " + expectedType.getName());
+        }
+        field.setAccessible(true);
+        return field;
+    }
+
+    boolean isAvailable() {
+        return unavailableReason == null;
+    }
+
+    Optional<String> getUnavailableReason() {
+        return Optional.ofNullable(unavailableReason);
+    }
+
+    /**
+     * @return routing tables per database, default database is under <code>&lt;default database&gt;</code> key.
+     * Driver creates routing table only after database is queried first time.
+     */
+    Map<String, RoutingTable> getRoutingTables() {
+        Map<String, RoutingTable> ret = new TreeMap<>();
+        handlers().forEach((database, handler) -> ret.put(database.description(), handler.routingTable()));
+        return ret;
+    }
+
+    Optional<RoutingTable> getRoutingTable(String database) {
+        return handlers().entrySet().stream()
+                .filter(entry -> entry.getKey().databaseName().map(database::equals).orElse(false))
+                .map(entry -> entry.getValue().routingTable())
+                .findFirst();
+    }
+
+    Optional<Long> getExpirationTimestamp(RoutingTable routingTable) {
+        if(!isAvailable() || !(routingTable instanceof ClusterRoutingTable)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of((long) getExpirationTimestamp.invoke((ClusterRoutingTable) routingTable));
+        } catch (Throwable ex) {
+            log.error("Can't access routing table expiry time", ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Makes driver refresh routing table before next query.
+     */
+    boolean expire(RoutingTable routingTable) {
+        if(!isAvailable() || !(routingTable instanceof ClusterRoutingTable)) {
+            return false;
+        }
+        try {
+            setExpirationTimestamp.invoke((ClusterRoutingTable) routingTable, System.currentTimeMillis());
+            return true;
+        } catch (Throwable ex) {
+            log.error("Can't expire routing table", ex);
+            return false;
+        }
+    }
+
+    static List<String> addresses(AddressSet addressSet) {
+        return Arrays.stream(addressSet.toArray())
+                .map(BoltServerAddress::toString)
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<DatabaseName, RoutingTableHandler> handlers() {
+        if(!isAvailable()) {
+            return Collections.emptyMap();
+        }
+        try {
+            RoutingTableRegistry registry = (RoutingTableRegistry) routingTables.invoke(loadBalancer);
+            if(!(registry instanceof RoutingTableRegistryImpl)) {
+                log.error("Unexpected routing table registry " + registry.getClass().getName());
+                return Collections.emptyMap();
+            }
+            return (Map<DatabaseName, RoutingTableHandler>) routingTableHandlers.invoke((RoutingTableRegistryImpl) registry);
+        } catch (Throwable ex) {
+            log.error("Unable to retrieve routing tables", ex);
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -3,7 +3,6 @@ package com.mz.example.neo4j;
 import lombok.extern.slf4j.Slf4j;
 import org.neo4j.driver.*;
 import org.neo4j.driver.internal.InternalDriver;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -14,15 +13,12 @@ import java.util.Arrays;
 @Configuration
 public class Neo4jConfiguration {
 
-    private static final String NEO4J_LB_POLICY = "mypolicy";
+    public static final String NEO4J_LB_POLICY = "mypolicy";
     private static final String NEO4J_USER = "neo4j";
     private static final String NEO4J_PASSWORD = "p4ssword";
     private static final String NEO4J_PROTOCOL = "neo4j://";
     public static final String NEO4J_DATABASE_NAME = "neo4j";
 
-    private Driver neo4jDriver;
-    private Session neo4jSession;
-
     @Bean
     public InternalDriver neo4jDriver() {
         final String policyURLParam = getPolicyURLParam(NEO4J_LB_POLICY);
@@ -41,12 +37,6 @@ public class Neo4jConfiguration {
                 uris, authToken, Config.defaultConfig());
     }
 
-    @Bean
-    @Autowired
-    public Session neo4jSession(Driver neo4jDriver) {
-        return neo4jDriver.session(SessionConfig.forDatabase(NEO4J_DATABASE_NAME));
-    }
-
     @SuppressWarnings("all")
     private String getPolicyURLParam(String policy) {
         return policy.isEmpty() ? "" : ("?policy=" + policy);
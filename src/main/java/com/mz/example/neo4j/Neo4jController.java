@@ -4,11 +4,14 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Slf4j
 @RestController
@@ -18,12 +21,36 @@ public class Neo4jController {
     @Autowired
     private Neo4jService neo4jService;
     @Autowired
+    private RoutingTableChangeFeed routingTableChangeFeed;
+    @Autowired
     private ObjectMapper objectMapper;
 
     @GetMapping("/routing-table")
     public String handleViewCurrentRoutingTable() throws JsonProcessingException {
 //        return neo4jService.unsafeGetCurrentRoutingTableViaReflection();
-        return objectMapper.writeValueAsString(neo4jService.getCurrentRoutingTableViaNeo4jQuery());
+        return objectMapper.writeValueAsString(neo4jService.getCurrentRoutingTable());
+    }
+
+    /**
+     * Streams routing table changes instead of polling {@link #handleViewCurrentRoutingTable()}, eg.:
+     * <code>curl -N localhost:8080/api/routing-table/changes</code>
+     */
+    @GetMapping(path = "/routing-table/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter handleRoutingTableChanges() {
+        return routingTableChangeFeed.subscribe();
+    }
+
+    @GetMapping("/routing-table/cache-stats")
+    public RoutingTableCache.Stats handleGetRoutingTableCacheStats() {
+        return neo4jService.getRoutingTableCacheStats();
+    }
+
+    /**
+     * Routing tables and their expiry time of all databases, as kept in memory by the driver - does not query neo4j.
+     */
+    @GetMapping("/routing-table/driver")
+    public List<Neo4jService.DriverRoutingTable> handleGetDriverRoutingTables() {
+        return neo4jService.unsafeGetDriverRoutingTablesViaReflection();
     }
 
     @GetMapping("/routing-table/expiry-time")
@@ -41,6 +68,11 @@ public class Neo4jController {
         neo4jService.simpleWrite();
     }
 
+    @GetMapping("/request-stats")
+    public Neo4jService.RequestStats handleGetRequestStats() {
+        return neo4jService.getRequestStats();
+    }
+
     @GetMapping("/do-read")
     public String handleSimpleRead() {
         return neo4jService.simpleRead();
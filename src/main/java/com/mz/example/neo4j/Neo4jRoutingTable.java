@@ -1,34 +1,96 @@
 package com.mz.example.neo4j;
 
-import lombok.Data;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
-@Data
-public class Neo4jRoutingTable {
+/**
+ * Immutable result of <code>dbms.cluster.routing.getRoutingTable</code>. Leader address and addresses per role are
+ * computed once when table is built, so lookups do not iterate servers.
+ */
+@Getter
+@ToString(of = {"ttl", "servers"})
+@EqualsAndHashCode(of = {"ttl", "servers"})
+public final class Neo4jRoutingTable {
 
     public static final String WRITE_ROLE = "WRITE";
     public static final String READ_ROLE = "READ";
     public static final String ROUTE_ROLE = "ROUTE";
 
-    private int ttl;
-    private List<Server> servers;
+    private final int ttl;
+    private final List<Server> servers;
+    @Getter(AccessLevel.NONE)
+    private final Optional<String> leaderAddress;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Set<String>> addressesByRole;
 
-    @Data
-    public static class Server{
-        private List<String> addresses;
-        private String role;
+    public Neo4jRoutingTable(int ttl, List<Server> servers) {
+        this.ttl = ttl;
+        this.servers = Collections.unmodifiableList(new ArrayList<>(servers));
 
-        public boolean isLeader() {
-            return WRITE_ROLE.equals(role);
+        Map<String, Set<String>> byRole = new HashMap<>();
+        String leader = null;
+        for (Server server : servers) {
+            byRole.computeIfAbsent(server.getRole(), role -> new LinkedHashSet<>()).addAll(server.getAddresses());
+            if(leader == null && server.isLeader() && !server.getAddresses().isEmpty()) {
+                leader = server.getAddresses().get(0);
+            }
+        }
+        byRole.replaceAll((role, addresses) -> Collections.unmodifiableSet(addresses));
+        this.addressesByRole = Collections.unmodifiableMap(byRole);
+        this.leaderAddress = Optional.ofNullable(leader);
+    }
+
+    /**
+     * Decodes record returned by <code>dbms.cluster.routing.getRoutingTable</code> procedure.
+     */
+    public static Neo4jRoutingTable fromRecord(Record record) {
+        Value serversValue = record.get("servers");
+        List<Server> servers = new ArrayList<>(serversValue.size());
+        for (Value server : serversValue.values()) {
+            servers.add(Server.fromValue(server));
         }
+        return new Neo4jRoutingTable(record.get("ttl").asInt(), servers);
     }
 
     public Optional<String> getLeaderAddress() {
-        return servers.stream()
-                .filter(Server::isLeader)
-                .findFirst()
-                .flatMap(server -> server.getAddresses().stream().findFirst());
+        return leaderAddress;
+    }
+
+    /**
+     * @return addresses of servers with given role, empty if there are none
+     */
+    public Set<String> getAddresses(String role) {
+        return addressesByRole.getOrDefault(role, Collections.emptySet());
+    }
+
+    public boolean hasRole(String address, String role) {
+        return getAddresses(role).contains(address);
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static final class Server {
+        private final List<String> addresses;
+        private final String role;
+
+        public Server(List<String> addresses, String role) {
+            this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+            this.role = role;
+        }
+
+        static Server fromValue(Value value) {
+            return new Server(value.get("addresses").asList(Value::asString), value.get("role").asString());
+        }
+
+        public boolean isLeader() {
+            return WRITE_ROLE.equals(role);
+        }
     }
 }
@@ -1,44 +1,98 @@
 package com.mz.example.neo4j;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mz.example.timeline.TimelineEvent;
+import com.mz.example.timeline.TimelineLog;
+import io.micrometer.core.instrument.*;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.neo4j.driver.Record;
-import org.neo4j.driver.Session;
-import org.neo4j.driver.internal.DatabaseNameUtil;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.async.ResultCursor;
+import org.neo4j.driver.summary.ResultSummary;
 import org.neo4j.driver.internal.InternalDriver;
-import org.neo4j.driver.internal.SessionFactoryImpl;
-import org.neo4j.driver.internal.cluster.ClusterRoutingTable;
 import org.neo4j.driver.internal.cluster.RoutingTable;
-import org.neo4j.driver.internal.cluster.RoutingTableHandler;
-import org.neo4j.driver.internal.cluster.RoutingTableRegistryImpl;
-import org.neo4j.driver.internal.cluster.loadbalancing.LoadBalancer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Field;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 public class Neo4jService {
 
+    private static final String ROLE_LEADER = "leader";
+    private static final String ROLE_FOLLOWER = "follower";
+    private static final String ROLE_UNKNOWN = "unknown";
+    private static final String WRITE_KAFKA_RECORDS_QUERY = "UNWIND $records AS record "
+            + "MERGE (m:KafkaRecord {topic: record.topic, partition: record.partition, offset: record.offset}) "
+            + "SET m.key = record.key, m.value = record.value";
+
     @Autowired
     private InternalDriver neo4jDriver;
     @Autowired
-    private Session session;
+    private Neo4jSessions sessions;
+    @Autowired
+    private MeterRegistry meterRegistry;
     @Autowired
-    private ObjectMapper objectMapper;
+    private TimelineLog timelineLog;
     @Getter
     @Value("${neo4j.sameDCServers}")
     private List<String> sameDCServers;
+    @Value("${neo4j.routingTableCache.refreshAheadRatio:0.8}")
+    private double routingTableRefreshAheadRatio;
+    @Value("${neo4j.routingTableCache.maxIdleSeconds:300}")
+    private long routingTableMaxIdleSeconds;
+
+    private RoutingTableCache routingTableCache;
+    private DriverRoutingTableAccessor driverRoutingTables;
+    private MultiGauge leaderGauge;
+    private final Map<String, String> leaderPerDatabase = new ConcurrentHashMap<>();
+    private final Map<String, Counter> requestCounters = new ConcurrentHashMap<>();
+    private final Map<String, Neo4jRoutingTable> lastRoutingTables = new ConcurrentHashMap<>();
+    private final AtomicLong routingTableVersion = new AtomicLong();
+
+    @PostConstruct
+    public void setup() {
+        driverRoutingTables = new DriverRoutingTableAccessor(neo4jDriver);
+        routingTableCache = new RoutingTableCache(this::queryRoutingTable, routingTableRefreshAheadRatio,
+                Duration.ofSeconds(routingTableMaxIdleSeconds));
+        registerCacheCounter("hit", RoutingTableCache.Stats::getHits);
+        registerCacheCounter("miss", RoutingTableCache.Stats::getMisses);
+        registerCacheCounter("reload", RoutingTableCache.Stats::getReloads);
+        registerCacheCounter("refresh", RoutingTableCache.Stats::getRefreshes);
+        registerCacheCounter("refresh_failure", RoutingTableCache.Stats::getRefreshFailures);
+        leaderGauge = MultiGauge.builder("neo4j.leader")
+                .description("Current neo4j leader, value is always 1 and address is in tag")
+                .register(meterRegistry);
+    }
+
+    private void registerCacheCounter(String result, ToDoubleFunction<RoutingTableCache.Stats> count) {
+        FunctionCounter.builder("neo4j.routing.table.cache", routingTableCache,
+                        cache -> count.applyAsDouble(cache.getStats()))
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        routingTableCache.close();
+    }
 
     public String unsafeGetCurrentRoutingTableViaReflection() {
         return getRoutingTable()
@@ -59,20 +113,139 @@ public class Neo4jService {
     }
 
     public void simpleWrite() {
-        session.run("MERGE (p:Person {id: 1})");
+        ResultSummary summary = sessions.write(tx -> tx.run("MERGE (p:Person {id: 1})").consume());
+        countRequest(Neo4jConfiguration.NEO4J_DATABASE_NAME, AccessMode.WRITE, summary);
+    }
+
+    /**
+     * Routing tables driver keeps in memory for every database it queried so far. Unlike
+     * {@link #getCurrentRoutingTableViaNeo4jQuery()} this does not query the cluster.
+     */
+    public List<DriverRoutingTable> unsafeGetDriverRoutingTablesViaReflection() {
+        return driverRoutingTables.getRoutingTables().entrySet().stream()
+                .map(entry -> new DriverRoutingTable(entry.getKey(),
+                        DriverRoutingTableAccessor.addresses(entry.getValue().writers()),
+                        DriverRoutingTableAccessor.addresses(entry.getValue().readers()),
+                        DriverRoutingTableAccessor.addresses(entry.getValue().routers()),
+                        driverRoutingTables.getExpirationTimestamp(entry.getValue())
+                                .map(Neo4jService::toLocalDateTime)
+                                .orElse(null)))
+                .collect(Collectors.toList());
     }
 
     public String simpleRead() {
-        return session.run("MATCH (p:Person {id: 1}) RETURN p").single().toString();
+        return sessions.read(tx -> {
+            Result result = tx.run("MATCH (p:Person {id: 1}) RETURN p");
+            String person = result.single().toString();
+            countRequest(Neo4jConfiguration.NEO4J_DATABASE_NAME, AccessMode.READ, result.consume());
+            return person;
+        });
+    }
+
+    /**
+     * Writes all records in single transaction to given database. Returned stage completes once transaction is
+     * committed.
+     *
+     * @param records each record is a map with topic, partition, offset, key and value
+     */
+    public CompletionStage<Void> writeKafkaRecordsAsync(String database, List<Map<String, Object>> records) {
+        return sessions.writeAsync(database, tx -> tx.runAsync(WRITE_KAFKA_RECORDS_QUERY, Values.parameters("records", records))
+                .thenCompose(ResultCursor::consumeAsync)
+                .thenApply(summary -> {
+                    countRequest(database, AccessMode.WRITE, summary);
+                    return null;
+                }));
+    }
+
+    /**
+     * Counts requests by role of server which executed them, to show how many reads are offloaded from the leader.
+     * Leader is the last one seen in routing table, so this does not block driver threads.
+     */
+    private void countRequest(String database, AccessMode accessMode, ResultSummary summary) {
+        String leader = leaderPerDatabase.get(database);
+        String role = leader == null ? ROLE_UNKNOWN
+                : leader.equals(summary.server().address()) ? ROLE_LEADER : ROLE_FOLLOWER;
+        requestCounters.computeIfAbsent(accessMode.name().toLowerCase() + "." + role, key ->
+                Counter.builder("neo4j.requests")
+                        .description("Transactions executed per access mode and role of server they ran on")
+                        .tags("mode", accessMode.name().toLowerCase(), "role", role)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public RequestStats getRequestStats() {
+        return new RequestStats(requestCount(AccessMode.READ, ROLE_LEADER), requestCount(AccessMode.READ, ROLE_FOLLOWER),
+                requestCount(AccessMode.WRITE, ROLE_LEADER), requestCount(AccessMode.WRITE, ROLE_FOLLOWER),
+                requestCount(AccessMode.READ, ROLE_UNKNOWN) + requestCount(AccessMode.WRITE, ROLE_UNKNOWN));
+    }
+
+    private long requestCount(AccessMode accessMode, String role) {
+        Counter counter = requestCounters.get(accessMode.name().toLowerCase() + "." + role);
+        return counter == null ? 0 : (long) counter.count();
+    }
+
+    /**
+     * Cached routing table of default database and load balancing policy. See {@link RoutingTableCache}.
+     */
+    public Neo4jRoutingTable getCurrentRoutingTable() {
+        return getCachedRoutingTable(Neo4jConfiguration.NEO4J_DATABASE_NAME, Neo4jConfiguration.NEO4J_LB_POLICY);
+    }
+
+    public Neo4jRoutingTable getCachedRoutingTable(String database, String policy) {
+        return routingTableCache.get(database, policy);
+    }
+
+    /**
+     * Routing table queried from Neo4j now, cached copy is replaced with it. Used to follow leader changes, which
+     * cached copy shows only after up to ttl.
+     */
+    public Neo4jRoutingTable getFreshRoutingTable(String database, String policy) {
+        return routingTableCache.reload(database, policy);
+    }
+
+    public RoutingTableCache.Stats getRoutingTableCacheStats() {
+        return routingTableCache.getStats();
     }
 
     public Neo4jRoutingTable getCurrentRoutingTableViaNeo4jQuery() {
-        Record rtRecord = session.run("CALL dbms.cluster.routing.getRoutingTable({})").single();
-        try {
-            String asJson = objectMapper.writeValueAsString(rtRecord.asMap());
-            return objectMapper.readValue(asJson, Neo4jRoutingTable.class);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Problem serializing to JSON", e);
+        return queryRoutingTable(Neo4jConfiguration.NEO4J_DATABASE_NAME, Neo4jConfiguration.NEO4J_LB_POLICY);
+    }
+
+    private Neo4jRoutingTable queryRoutingTable(String database, String policy) {
+        Map<String, Object> context = policy.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.singletonMap("policy", policy);
+        Neo4jRoutingTable routingTable = Timer.builder("neo4j.routing.table.query")
+                .tags("database", database, "policy", policy)
+                .register(meterRegistry)
+                .record(() -> sessions.readWithoutBookmarks(tx -> Neo4jRoutingTable.fromRecord(tx.run(
+                        "CALL dbms.cluster.routing.getRoutingTable($context, $database)",
+                        Values.parameters("context", context, "database", database)).single())));
+        recordRoutingTableVersion(database, policy, routingTable);
+        updateLeaderGauge(database, routingTable.getLeaderAddress());
+        return routingTable;
+    }
+
+    private void recordRoutingTableVersion(String database, String policy, Neo4jRoutingTable routingTable) {
+        Neo4jRoutingTable previous = lastRoutingTables.put(database + "|" + policy, routingTable);
+        if(previous == null || RoutingTableDiff.between(previous, routingTable).hasChanges()) {
+            timelineLog.record(TimelineEvent.Type.ROUTING_TABLE, database, policy,
+                    routingTableVersion.incrementAndGet(), routingTable.getLeaderAddress().orElse(null),
+                    routingTable.getTtl(),
+                    String.join(",", routingTable.getAddresses(Neo4jRoutingTable.READ_ROLE)),
+                    String.join(",", routingTable.getAddresses(Neo4jRoutingTable.ROUTE_ROLE)));
+        }
+    }
+
+    private void updateLeaderGauge(String database, Optional<String> leader) {
+        String previous = leader.isPresent()
+                ? leaderPerDatabase.put(database, leader.get())
+                : leaderPerDatabase.remove(database);
+        if(!leader.equals(Optional.ofNullable(previous))) {
+            timelineLog.record(TimelineEvent.Type.LEADER_CHANGED, database, previous, leader.orElse(null));
+            leaderGauge.register(leaderPerDatabase.entrySet().stream()
+                    .map(entry -> MultiGauge.Row.of(Tags.of("database", entry.getKey(), "address", entry.getValue()), 1))
+                    .collect(Collectors.toList()), true);
         }
     }
 
@@ -83,40 +256,37 @@ public class Neo4jService {
      * {@link #simpleWrite()}<br/>
      */
     private Optional<RoutingTable> getRoutingTable() {
-        SessionFactoryImpl sessionFactory = (SessionFactoryImpl) neo4jDriver.getSessionFactory();
-        LoadBalancer loadBalancer = (LoadBalancer) sessionFactory.getConnectionProvider();
-
-        try {
-            Field routingTablesField = LoadBalancer.class.getDeclaredField("routingTables");
-            routingTablesField.setAccessible(true);
-            RoutingTableRegistryImpl routingTableRegistry = (RoutingTableRegistryImpl)
-                    routingTablesField.get(loadBalancer);
-
-            Field routingTableHandlers = RoutingTableRegistryImpl.class.getDeclaredField("routingTableHandlers");
-            routingTableHandlers.setAccessible(true);
-            Map rtHandlers = (Map) routingTableHandlers.get(routingTableRegistry);
-
-            RoutingTableHandler handler = (RoutingTableHandler) rtHandlers
-                    .get(DatabaseNameUtil.database(Neo4jConfiguration.NEO4J_DATABASE_NAME));
-            return Optional.of(handler.routingTable());
-        } catch (Throwable ex) {
-            log.error("Unable to retrieve routing table", ex);
-            return Optional.empty();
-        }
+        return driverRoutingTables.getRoutingTable(Neo4jConfiguration.NEO4J_DATABASE_NAME);
     }
 
     private Optional<LocalDateTime> getRoutingTableExpiryTime(RoutingTable routingTable, boolean expireNow) {
-        try {
-            Field expirationTimestamp = ClusterRoutingTable.class.getDeclaredField("expirationTimestamp");
-            expirationTimestamp.setAccessible(true);
-            if(expireNow) {
-                expirationTimestamp.set(routingTable, System.currentTimeMillis());
-            }
-            long expiryTime = (long) expirationTimestamp.get(routingTable);
-            return Optional.of(Instant.ofEpochMilli(expiryTime).atZone(ZoneId.systemDefault()).toLocalDateTime());
-        } catch (Throwable ex) {
-            log.error("Can't access routing table expiry time");
-            return Optional.empty();
+        if(expireNow) {
+            driverRoutingTables.expire(routingTable);
         }
+        return driverRoutingTables.getExpirationTimestamp(routingTable).map(Neo4jService::toLocalDateTime);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMilli) {
+        return Instant.ofEpochMilli(epochMilli).atZone(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    @lombok.Value
+    public static class RequestStats {
+        long readsOnLeader;
+        long readsOnFollowers;
+        long writesOnLeader;
+        /** leader changed since it was last seen in routing table */
+        long writesOnFollowers;
+        /** no leader seen in routing table yet */
+        long unknownRole;
+    }
+
+    @lombok.Value
+    public static class DriverRoutingTable {
+        String database;
+        List<String> writers;
+        List<String> readers;
+        List<String> routers;
+        LocalDateTime expiryTime;
     }
 }
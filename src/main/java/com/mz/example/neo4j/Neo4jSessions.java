@@ -0,0 +1,150 @@
+package com.mz.example.neo4j;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.*;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.AsyncTransactionWork;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Opens new session for each unit of work, because driver sessions are not thread safe. Sessions are cheap, they borrow
+ * pooled connection only while transaction runs. Reads use READ access mode, so driver routes them to followers
+ * allowed by load balancing policy, writes use WRITE access mode and go to the leader.<br/>
+ * Bookmarks of latest write transactions are passed to reads of same database, so follower serves read only after it
+ * applied those writes - reads see writes made by this application (<code>neo4j.readYourWrites</code>).
+ */
+@Slf4j
+@Component
+public class Neo4jSessions {
+
+    //writes completing concurrently return bookmarks in no particular order, so few latest ones are kept
+    private static final int MAX_BOOKMARKS_PER_DATABASE = 8;
+
+    @Autowired
+    private Driver neo4jDriver;
+    @Value("${neo4j.readYourWrites:true}")
+    private boolean readYourWrites;
+
+    private final Map<String, Deque<Bookmark>> bookmarks = new ConcurrentHashMap<>();
+
+    public <T> T read(TransactionWork<T> work) {
+        try (Session session = neo4jDriver.session(readSessionConfig(Neo4jConfiguration.NEO4J_DATABASE_NAME))) {
+            return session.readTransaction(work);
+        }
+    }
+
+    /**
+     * Read which does not wait for bookmarks of previous writes, for queries that must not be delayed by lagging
+     * follower, like routing table ones.
+     */
+    public <T> T readWithoutBookmarks(TransactionWork<T> work) {
+        try (Session session = neo4jDriver.session(sessionConfig(AccessMode.READ))) {
+            return session.readTransaction(work);
+        }
+    }
+
+    public <T> T write(TransactionWork<T> work) {
+        try (Session session = neo4jDriver.session(sessionConfig(AccessMode.WRITE))) {
+            T result = session.writeTransaction(work);
+            recordBookmark(Neo4jConfiguration.NEO4J_DATABASE_NAME, session.lastBookmark());
+            return result;
+        }
+    }
+
+    /**
+     * Does not block calling thread, session is closed when returned stage completes.
+     */
+    public <T> CompletionStage<T> readAsync(AsyncTransactionWork<CompletionStage<T>> work) {
+        AsyncSession session = neo4jDriver.asyncSession(readSessionConfig(Neo4jConfiguration.NEO4J_DATABASE_NAME));
+        return closeWhenDone(session, session.readTransactionAsync(work));
+    }
+
+    /**
+     * Does not block calling thread, session is closed when returned stage completes.
+     */
+    public <T> CompletionStage<T> writeAsync(AsyncTransactionWork<CompletionStage<T>> work) {
+        return writeAsync(Neo4jConfiguration.NEO4J_DATABASE_NAME, work);
+    }
+
+    /**
+     * Does not block calling thread, session is closed when returned stage completes.
+     */
+    public <T> CompletionStage<T> writeAsync(String database, AsyncTransactionWork<CompletionStage<T>> work) {
+        AsyncSession session = neo4jDriver.asyncSession(sessionConfig(database, AccessMode.WRITE));
+        return closeWhenDone(session, session.writeTransactionAsync(work).thenApply(result -> {
+            recordBookmark(database, session.lastBookmark());
+            return result;
+        }));
+    }
+
+    /**
+     * @return bookmarks next read of given database waits for
+     */
+    public List<Bookmark> getBookmarks(String database) {
+        Deque<Bookmark> databaseBookmarks = bookmarks.get(database);
+        if(databaseBookmarks == null) {
+            return Collections.emptyList();
+        }
+        synchronized (databaseBookmarks) {
+            return new ArrayList<>(databaseBookmarks);
+        }
+    }
+
+    private void recordBookmark(String database, Bookmark bookmark) {
+        if(bookmark == null || bookmark.isEmpty()) {
+            return;
+        }
+        Deque<Bookmark> databaseBookmarks = bookmarks.computeIfAbsent(database, db -> new ArrayDeque<>());
+        synchronized (databaseBookmarks) {
+            databaseBookmarks.addLast(bookmark);
+            if(databaseBookmarks.size() > MAX_BOOKMARKS_PER_DATABASE) {
+                databaseBookmarks.removeFirst();
+            }
+        }
+    }
+
+    private SessionConfig readSessionConfig(String database) {
+        SessionConfig.Builder builder = SessionConfig.builder()
+                .withDatabase(database)
+                .withDefaultAccessMode(AccessMode.READ);
+        if(readYourWrites) {
+            builder.withBookmarks(getBookmarks(database));
+        }
+        return builder.build();
+    }
+
+    private static SessionConfig sessionConfig(AccessMode accessMode) {
+        return sessionConfig(Neo4jConfiguration.NEO4J_DATABASE_NAME, accessMode);
+    }
+
+    private static SessionConfig sessionConfig(String database, AccessMode accessMode) {
+        return SessionConfig.builder()
+                .withDatabase(database)
+                .withDefaultAccessMode(accessMode)
+                .build();
+    }
+
+    private static <T> CompletionStage<T> closeWhenDone(AsyncSession session, CompletionStage<T> work) {
+        return work
+                .handle((result, ex) -> session.closeAsync().thenApply(closed -> {
+                    if(ex != null) {
+                        throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                    }
+                    return result;
+                }))
+                .thenCompose(Function.identity());
+    }
+}
@@ -0,0 +1,210 @@
+package com.mz.example.neo4j;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Caches routing tables returned by <code>dbms.cluster.routing.getRoutingTable</code> per database and load balancing
+ * policy. Entry is valid for <code>ttl</code> seconds reported by Neo4j. Before entry expires it is refreshed in
+ * background, so callers keep getting cached copy. When entry is missing or expired only one caller queries Neo4j,
+ * concurrent callers for same key wait for that result instead of issuing their own query.
+ */
+@Slf4j
+public class RoutingTableCache implements AutoCloseable {
+
+    private static final long MIN_TTL_MILLIS = Duration.ofSeconds(1).toMillis();
+    private static final long RETRY_AFTER_FAILURE_MILLIS = Duration.ofSeconds(1).toMillis();
+
+    private final BiFunction<String, String, Neo4jRoutingTable> loader;
+    private final double refreshAheadRatio;
+    private final long maxIdleMillis;
+    private final ScheduledExecutorService refresher;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    /**
+     * @param loader queries Neo4j for routing table of given database and policy
+     * @param refreshAheadRatio fraction of ttl after which entry is refreshed in background, eg.: 0.8
+     * @param maxIdle entries not read for this long are no longer refreshed and are dropped
+     */
+    public RoutingTableCache(BiFunction<String, String, Neo4jRoutingTable> loader,
+                             double refreshAheadRatio, Duration maxIdle) {
+        if(refreshAheadRatio <= 0 || refreshAheadRatio > 1) {
+            throw new IllegalArgumentException("Refresh ahead ratio must be within (0, 1], was: " + refreshAheadRatio);
+        }
+        this.loader = loader;
+        this.refreshAheadRatio = refreshAheadRatio;
+        this.maxIdleMillis = maxIdle.toMillis();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "routing-table-cache-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Neo4jRoutingTable get(String database, String policy) {
+        Entry entry = entries.computeIfAbsent(new Key(database, policy), Entry::new);
+        entry.lastAccess = System.currentTimeMillis();
+        Loaded loaded = entry.loaded;
+        if(loaded != null && !loaded.isExpired()) {
+            hits.incrementAndGet();
+            return loaded.table;
+        }
+        misses.incrementAndGet();
+        return entry.load();
+    }
+
+    /**
+     * Queries Neo4j even when cached entry is still valid, for callers following leader changes which can't wait for
+     * ttl to pass. Concurrent reloads of same key share one query and its result replaces cached entry. Reloads are
+     * counted separately from hits and misses.
+     */
+    public Neo4jRoutingTable reload(String database, String policy) {
+        Entry entry = entries.computeIfAbsent(new Key(database, policy), Entry::new);
+        entry.lastAccess = System.currentTimeMillis();
+        reloads.incrementAndGet();
+        return entry.load();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), reloads.get(), refreshes.get(), refreshFailures.get(), entries.size());
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Keeps at most one pending refresh per entry.
+     */
+    private void scheduleRefresh(Entry entry, long delayMillis) {
+        if(refresher.isShutdown()) {
+            return;
+        }
+        synchronized (entry) {
+            if(entry.pendingRefresh != null) {
+                entry.pendingRefresh.cancel(false);
+            }
+            try {
+                entry.pendingRefresh = refresher.schedule(() -> refresh(entry), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                log.debug("Routing table cache is closed. Skipping refresh of " + entry.key);
+            }
+        }
+    }
+
+    private void refresh(Entry entry) {
+        if(entries.get(entry.key) != entry) {
+            return;
+        }
+        if(System.currentTimeMillis() - entry.lastAccess > maxIdleMillis) {
+            log.debug("Routing table for " + entry.key + " was not used recently. Dropping it from cache.");
+            entries.remove(entry.key, entry);
+            return;
+        }
+        refreshes.incrementAndGet();
+        try {
+            entry.load();
+        } catch (Exception ex) {
+            refreshFailures.incrementAndGet();
+            log.warn("Background refresh of routing table for " + entry.key + " failed. Will retry.", ex);
+            scheduleRefresh(entry, RETRY_AFTER_FAILURE_MILLIS);
+        }
+    }
+
+    @Value
+    public static class Stats {
+        long hits;
+        long misses;
+        /** queries forced by {@link #reload(String, String)} */
+        long reloads;
+        long refreshes;
+        long refreshFailures;
+        int entries;
+    }
+
+    @Value
+    private static class Key {
+        String database;
+        String policy;
+    }
+
+    private static class Loaded {
+        private final Neo4jRoutingTable table;
+        private final long expiresAt;
+
+        private Loaded(Neo4jRoutingTable table, long expiresAt) {
+            this.table = table;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    private class Entry {
+        private final Key key;
+        private volatile Loaded loaded;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private CompletableFuture<Neo4jRoutingTable> inFlight;
+        private ScheduledFuture<?> pendingRefresh;
+
+        private Entry(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Only first caller queries Neo4j, others join its result.
+         */
+        private Neo4jRoutingTable load() {
+            CompletableFuture<Neo4jRoutingTable> future;
+            boolean owner = false;
+            synchronized (this) {
+                if(inFlight == null) {
+                    inFlight = new CompletableFuture<>();
+                    owner = true;
+                }
+                future = inFlight;
+            }
+            if(owner) {
+                try {
+                    Neo4jRoutingTable table = loader.apply(key.getDatabase(), key.getPolicy());
+                    long ttlMillis = Math.max(MIN_TTL_MILLIS, TimeUnit.SECONDS.toMillis(table.getTtl()));
+                    loaded = new Loaded(table, System.currentTimeMillis() + ttlMillis);
+                    scheduleRefresh(this, (long) (ttlMillis * refreshAheadRatio));
+                    future.complete(table);
+                } catch (Throwable ex) {
+                    //waiters must not block forever, also when loader fails with an Error
+                    future.completeExceptionally(ex);
+                } finally {
+                    synchronized (this) {
+                        inFlight = null;
+                    }
+                }
+            }
+            try {
+                return future.join();
+            } catch (CompletionException ex) {
+                if(ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                if(ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+    }
+}
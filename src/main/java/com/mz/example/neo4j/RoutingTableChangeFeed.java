@@ -0,0 +1,129 @@
+package com.mz.example.neo4j;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes routing table changes to subscribers as server-sent events. Single loop queries Neo4j once per refresh
+ * interval, regardless of number of subscribers, and does not query at all when there are none. New subscriber gets
+ * last known routing table as <code>routing-table</code> event, then {@link RoutingTableDiff} as
+ * <code>routing-table-change</code> event after each refresh which changed routing table. First refresh after ttl of
+ * routing table ran out also lists {@link RoutingTableDiff.Change#RENEWED}, so it is sent at most once per ttl when
+ * nothing else changes.
+ */
+@Slf4j
+@Component
+public class RoutingTableChangeFeed {
+
+    static final String ROUTING_TABLE_EVENT = "routing-table";
+    static final String ROUTING_TABLE_CHANGE_EVENT = "routing-table-change";
+
+    @Autowired
+    private Neo4jService neo4jService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${neo4j.changeFeed.refreshIntervalMs:1000}")
+    private long refreshIntervalMs;
+    @Value("${neo4j.changeFeed.subscriptionTimeoutMs:3600000}")
+    private long subscriptionTimeoutMs;
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService executor;
+    //guarded by this, so subscriber never gets diff against table it has not seen
+    private Neo4jRoutingTable latest;
+    //guarded by this, when ttl of latest started
+    private long renewedAt;
+
+    @PostConstruct
+    public void setup() {
+        Gauge.builder("neo4j.routing.table.feed.subscribers", subscribers, List::size).register(meterRegistry);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "routing-table-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::refresh, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        subscribers.forEach(SseEmitter::complete);
+        subscribers.clear();
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(subscriptionTimeoutMs);
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        emitter.onError(ex -> subscribers.remove(emitter));
+        synchronized (this) {
+            subscribers.add(emitter);
+            if(latest != null) {
+                send(emitter, SseEmitter.event().name(ROUTING_TABLE_EVENT).data(latest));
+            }
+        }
+        log.info("Routing table change feed subscribed, subscribers: " + subscribers.size());
+        return emitter;
+    }
+
+    private void refresh() {
+        if(subscribers.isEmpty()) {
+            return;
+        }
+        Neo4jRoutingTable current;
+        try {
+            current = neo4jService.getCurrentRoutingTableViaNeo4jQuery();
+        } catch (RuntimeException ex) {
+            log.warn("Routing table change feed refresh failed.", ex);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Neo4jRoutingTable previous = latest;
+            latest = current;
+            if(previous == null) {
+                renewedAt = now;
+                publish(SseEmitter.event().name(ROUTING_TABLE_EVENT).data(current));
+                return;
+            }
+            boolean renewed = now - renewedAt >= TimeUnit.SECONDS.toMillis(previous.getTtl());
+            if(renewed) {
+                renewedAt = now;
+            }
+            RoutingTableDiff diff = RoutingTableDiff.between(previous, current, renewed);
+            if(diff.hasChanges()) {
+                log.info("Routing table changed: " + diff);
+                publish(SseEmitter.event().name(ROUTING_TABLE_CHANGE_EVENT).data(diff));
+            }
+        }
+    }
+
+    private void publish(SseEmitter.SseEventBuilder event) {
+        subscribers.forEach(emitter -> send(emitter, event));
+    }
+
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException ex) {
+            log.debug("Routing table change feed subscriber disconnected.", ex);
+            subscribers.remove(emitter);
+            emitter.completeWithError(ex);
+        }
+    }
+}
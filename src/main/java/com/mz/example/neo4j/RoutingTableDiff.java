@@ -0,0 +1,74 @@
+package com.mz.example.neo4j;
+
+import lombok.Value;
+
+import java.util.*;
+
+/**
+ * Difference between two consecutive routing tables of same database and load balancing policy.
+ */
+@Value
+public class RoutingTableDiff {
+
+    public enum Change {
+        LEADER, READERS, ROUTERS,
+        /** ttl value changed */
+        TTL,
+        /** ttl of previous routing table ran out and routing table was fetched again, so it is valid for another ttl */
+        RENEWED
+    }
+
+    Set<Change> changes;
+    String previousLeader;
+    String leader;
+    Set<String> addedReaders;
+    Set<String> removedReaders;
+    Set<String> addedRouters;
+    Set<String> removedRouters;
+    int previousTtl;
+    int ttl;
+
+    public static RoutingTableDiff between(Neo4jRoutingTable previous, Neo4jRoutingTable current) {
+        return between(previous, current, false);
+    }
+
+    /**
+     * @param renewed whether ttl of previous routing table ran out before current one was fetched
+     */
+    public static RoutingTableDiff between(Neo4jRoutingTable previous, Neo4jRoutingTable current, boolean renewed) {
+        Set<Change> changes = EnumSet.noneOf(Change.class);
+        String previousLeader = previous.getLeaderAddress().orElse(null);
+        String leader = current.getLeaderAddress().orElse(null);
+        if(!Objects.equals(previousLeader, leader)) {
+            changes.add(Change.LEADER);
+        }
+        Set<String> addedReaders = added(previous, current, Neo4jRoutingTable.READ_ROLE);
+        Set<String> removedReaders = added(current, previous, Neo4jRoutingTable.READ_ROLE);
+        if(!addedReaders.isEmpty() || !removedReaders.isEmpty()) {
+            changes.add(Change.READERS);
+        }
+        Set<String> addedRouters = added(previous, current, Neo4jRoutingTable.ROUTE_ROLE);
+        Set<String> removedRouters = added(current, previous, Neo4jRoutingTable.ROUTE_ROLE);
+        if(!addedRouters.isEmpty() || !removedRouters.isEmpty()) {
+            changes.add(Change.ROUTERS);
+        }
+        if(previous.getTtl() != current.getTtl()) {
+            changes.add(Change.TTL);
+        }
+        if(renewed) {
+            changes.add(Change.RENEWED);
+        }
+        return new RoutingTableDiff(changes, previousLeader, leader, addedReaders, removedReaders,
+                addedRouters, removedRouters, previous.getTtl(), current.getTtl());
+    }
+
+    private static Set<String> added(Neo4jRoutingTable from, Neo4jRoutingTable to, String role) {
+        Set<String> added = new TreeSet<>(to.getAddresses(role));
+        added.removeAll(from.getAddresses(role));
+        return added;
+    }
+
+    public boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+}
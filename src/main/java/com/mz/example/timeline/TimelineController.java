@@ -0,0 +1,37 @@
+package com.mz.example.timeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/timeline")
+public class TimelineController {
+
+    @Autowired
+    private TimelineLog timelineLog;
+
+    /**
+     * Replays recorded events, eg.: <code>curl localhost:8080/api/timeline/events?limit=100</code>
+     *
+     * @param sinceMs only events recorded at or after this epoch millisecond
+     * @param limit only this many latest events
+     */
+    @GetMapping("/events")
+    public List<TimelineEvent> handleGetEvents(@RequestParam(defaultValue = "0") long sinceMs,
+                                               @RequestParam(defaultValue = "1000") int limit) {
+        List<TimelineEvent> events = timelineLog.replay(sinceMs);
+        return events.subList(Math.max(0, events.size() - limit), events.size());
+    }
+
+    @GetMapping("/summary")
+    public TimelineSummary handleGetSummary(@RequestParam(defaultValue = "0") long sinceMs) {
+        return TimelineSummary.of(timelineLog.replay(sinceMs), timelineLog.getDropped(), System.currentTimeMillis());
+    }
+}
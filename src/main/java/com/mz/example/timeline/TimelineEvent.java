@@ -0,0 +1,161 @@
+package com.mz.example.timeline;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Single entry of {@link TimelineLog}. Each type has fixed list of fields, values are either text or number.<br/>
+ * Binary format: timestamp INT64, type INT8, field count INT8 and for each field tag INT8 (0 - null, 1 - INT64,
+ * 2 - INT16 length and UTF-8 bytes) followed by the value.
+ */
+public class TimelineEvent {
+
+    public enum Type {
+        ROUTING_TABLE(1, "database", "policy", "version", "leader", "ttl", "readers", "routers"),
+        LEADER_CHANGED(2, "database", "previousLeader", "leader"),
+        ASSIGNMENT(3, "assignor", "database", "leader", "leaderPath", "members", "eligibleMembers", "partitions"),
+        PARTITIONS_ASSIGNED(4, "partitions"),
+        PARTITIONS_REVOKED(5, "partitions"),
+        PARTITIONS_LOST(6, "partitions"),
+        PARTITION_PAUSED(7, "topic", "partition", "reason"),
+        PARTITION_RESUMED(8, "topic", "partition", "reason");
+
+        private final byte code;
+        private final List<String> fields;
+
+        Type(int code, String... fields) {
+            this.code = (byte) code;
+            this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+        }
+
+        public List<String> getFields() {
+            return fields;
+        }
+
+        static Type of(byte code) {
+            for (Type type : values()) {
+                if(type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown timeline event type: " + code);
+        }
+    }
+
+    private static final byte NULL_TAG = 0;
+    private static final byte NUMBER_TAG = 1;
+    private static final byte TEXT_TAG = 2;
+    private static final int MAX_TEXT_BYTES = Short.MAX_VALUE;
+
+    private final long timestamp;
+    private final Type type;
+    private final List<Object> values;
+
+    TimelineEvent(long timestamp, Type type, List<?> values) {
+        if(values.size() != type.fields.size()) {
+            throw new IllegalArgumentException(type + " event requires fields " + type.fields + ", got " + values);
+        }
+        this.timestamp = timestamp;
+        this.type = type;
+        List<Object> normalized = new ArrayList<>(values.size());
+        values.forEach(value -> normalized.add(normalize(value)));
+        this.values = Collections.unmodifiableList(normalized);
+    }
+
+    private static Object normalize(Object value) {
+        if(value == null) {
+            return null;
+        }
+        return value instanceof Number ? (Object) ((Number) value).longValue() : value.toString();
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Map<String, Object> getFields() {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        for (int field = 0; field < values.size(); field++) {
+            ret.put(type.fields.get(field), values.get(field));
+        }
+        return ret;
+    }
+
+    /**
+     * @return empty when value is null or event type does not have given field
+     */
+    Optional<String> text(String field) {
+        int index = type.fields.indexOf(field);
+        return index < 0 ? Optional.empty() : Optional.ofNullable(values.get(index)).map(Object::toString);
+    }
+
+    byte[] encode() {
+        List<byte[]> texts = new ArrayList<>();
+        int size = 8 + 1 + 1;
+        for (Object value : values) {
+            size += 1;
+            if(value instanceof Long) {
+                size += 8;
+            } else if(value != null) {
+                byte[] text = value.toString().getBytes(StandardCharsets.UTF_8);
+                if(text.length > MAX_TEXT_BYTES) {
+                    text = Arrays.copyOf(text, MAX_TEXT_BYTES);
+                }
+                texts.add(text);
+                size += 2 + text.length;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(timestamp);
+        buffer.put(type.code);
+        buffer.put((byte) values.size());
+        Iterator<byte[]> text = texts.iterator();
+        for (Object value : values) {
+            if(value == null) {
+                buffer.put(NULL_TAG);
+            } else if(value instanceof Long) {
+                buffer.put(NUMBER_TAG).putLong((Long) value);
+            } else {
+                byte[] bytes = text.next();
+                buffer.put(TEXT_TAG).putShort((short) bytes.length).put(bytes);
+            }
+        }
+        return buffer.array();
+    }
+
+    static TimelineEvent decode(ByteBuffer buffer) {
+        long timestamp = buffer.getLong();
+        Type type = Type.of(buffer.get());
+        int count = buffer.get();
+        List<Object> values = new ArrayList<>(count);
+        for (int field = 0; field < count; field++) {
+            byte tag = buffer.get();
+            switch (tag) {
+                case NULL_TAG:
+                    values.add(null);
+                    break;
+                case NUMBER_TAG:
+                    values.add(buffer.getLong());
+                    break;
+                case TEXT_TAG:
+                    byte[] text = new byte[buffer.getShort()];
+                    buffer.get(text);
+                    values.add(new String(text, StandardCharsets.UTF_8));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown timeline field tag: " + tag);
+            }
+        }
+        return new TimelineEvent(timestamp, type, values);
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + " " + type + " " + getFields();
+    }
+}
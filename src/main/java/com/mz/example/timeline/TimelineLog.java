@@ -0,0 +1,260 @@
+package com.mz.example.timeline;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary log of routing table versions, leader changes, assignment decisions and partition pauses, for
+ * analysis of failovers after they happened.<br/>
+ * {@link #record(TimelineEvent.Type, Object...)} only puts event to bounded queue, so it never blocks caller eg.:
+ * polling thread - when queue is full event is dropped and counted. Single writer thread appends events to memory
+ * mapped segment files of <code>timeline.segmentSizeBytes</code> in <code>timeline.dir</code>, keeping at most
+ * <code>timeline.maxSegments</code> newest ones.<br/>
+ * Record in segment is INT32 length followed by {@link TimelineEvent} bytes, length is written last so reader never
+ * sees partially written record. Zero length marks end of segment.
+ */
+@Slf4j
+@Component
+public class TimelineLog {
+
+    private static final String SEGMENT_PREFIX = "timeline-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${timeline.enabled:true}")
+    private boolean enabled;
+    @Value("${timeline.dir:timeline}")
+    private String dir;
+    @Value("${timeline.segmentSizeBytes:16777216}")
+    private int segmentSizeBytes;
+    @Value("${timeline.maxSegments:8}")
+    private int maxSegments;
+    @Value("${timeline.queueCapacity:10000}")
+    private int queueCapacity;
+
+    private volatile BlockingQueue<TimelineEvent> queue;
+    private ExecutorService writer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    //only accessed from writer thread
+    private long segmentSequence;
+    private MappedByteBuffer segment;
+
+    @PostConstruct
+    public void setup() throws IOException {
+        FunctionCounter.builder("timeline.events", written, AtomicLong::get).tag("result", "written")
+                .register(meterRegistry);
+        FunctionCounter.builder("timeline.events", dropped, AtomicLong::get).tag("result", "dropped")
+                .register(meterRegistry);
+        if(!enabled) {
+            log.info("Timeline log disabled");
+            return;
+        }
+        Files.createDirectories(Paths.get(dir));
+        //new segment on each start, so segment of previous run does not have to be scanned for its end
+        segmentSequence = segments().stream().mapToLong(TimelineLog::sequenceOf).max().orElse(0);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "timeline-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.submit(this::writeEvents);
+        log.info("Writing timeline log to " + Paths.get(dir).toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void terminate() throws InterruptedException {
+        if(writer != null) {
+            writer.shutdownNow();
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Does not block, event is written asynchronously.
+     *
+     * @param values values of all fields of given type, in order, text or number
+     */
+    public void record(TimelineEvent.Type type, Object... values) {
+        if(queue == null) {
+            return;
+        }
+        if(!queue.offer(new TimelineEvent(System.currentTimeMillis(), type, Arrays.asList(values)))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Reads events from all segments, oldest first. Files are read, not mapped, so segments can be deleted while
+     * they are read. Records are read one by one up to the end marker, so unused rest of segment is never read.
+     */
+    public List<TimelineEvent> replay(long sinceMillis) {
+        List<TimelineEvent> ret = new ArrayList<>();
+        if(!enabled) {
+            return ret;
+        }
+        for (Path segmentFile : segments()) {
+            try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ);
+                 DataInputStream input = new DataInputStream(
+                         new BufferedInputStream(Channels.newInputStream(channel)))) {
+                readSegment(segmentFile, input, channel.size(), sinceMillis, ret);
+            } catch (IOException ex) {
+                //deleted or truncated by rotation in the meantime
+                log.debug("Unable to read timeline segment " + segmentFile, ex);
+            }
+        }
+        return ret;
+    }
+
+    private void readSegment(Path segmentFile, DataInputStream input, long size, long sinceMillis,
+                             List<TimelineEvent> events) throws IOException {
+        long remaining = size;
+        while (remaining >= 4) {
+            int length = input.readInt();
+            remaining -= 4;
+            if(length <= 0 || length > remaining) {
+                return;
+            }
+            byte[] record = new byte[length];
+            input.readFully(record);
+            remaining -= length;
+            try {
+                TimelineEvent event = TimelineEvent.decode(ByteBuffer.wrap(record));
+                if(event.getTimestamp() >= sinceMillis) {
+                    events.add(event);
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Skipping corrupted record of timeline segment " + segmentFile, ex);
+            }
+        }
+    }
+
+    private void writeEvents() {
+        TimelineEvent current = null;
+        try {
+            while (true) {
+                current = queue.take();
+                write(current);
+                current = null;
+            }
+        } catch (InterruptedException | ClosedByInterruptException ex) {
+            //shut down
+        } catch (Exception ex) {
+            log.error("Timeline log writer failed, events are no longer recorded.", ex);
+            queue = null;
+            return;
+        }
+        //channel operations fail while thread is interrupted
+        Thread.interrupted();
+        List<TimelineEvent> remaining = new ArrayList<>();
+        if(current != null) {
+            //interrupted while mapping new segment
+            remaining.add(current);
+        }
+        queue.drainTo(remaining);
+        try {
+            for (TimelineEvent event : remaining) {
+                write(event);
+            }
+            if(segment != null) {
+                segment.force();
+            }
+        } catch (IOException ex) {
+            log.warn("Unable to write timeline events on shutdown.", ex);
+        }
+    }
+
+    private void write(TimelineEvent event) throws IOException {
+        byte[] bytes = event.encode();
+        if(4 + bytes.length > segmentSizeBytes) {
+            log.warn("Timeline event larger than segment, dropping it: " + event);
+            dropped.incrementAndGet();
+            return;
+        }
+        if(segment == null || segment.remaining() < 4 + bytes.length) {
+            rotate();
+        }
+        int position = segment.position();
+        segment.position(position + 4);
+        segment.put(bytes);
+        segment.putInt(position, bytes.length);
+        written.incrementAndGet();
+    }
+
+    private void rotate() throws IOException {
+        if(segment != null) {
+            segment.force();
+        }
+        //same file is mapped again when mapping is interrupted on shutdown
+        Path segmentFile = Paths.get(dir, String.format("%s%020d%s", SEGMENT_PREFIX, segmentSequence + 1,
+                SEGMENT_SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile.toFile(), "rw")) {
+            //mapping stays valid after file is closed
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeBytes);
+        }
+        segmentSequence++;
+        List<Path> segments = segments();
+        for (int old = 0; old < segments.size() - maxSegments; old++) {
+            try {
+                Files.deleteIfExists(segments.get(old));
+            } catch (IOException ex) {
+                //eg.: on Windows while segment is still mapped, retried on next rotation
+                log.debug("Unable to delete timeline segment " + segments.get(old), ex);
+            }
+        }
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(Paths.get(dir))) {
+            return files
+                    .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted(Comparator.comparingLong(TimelineLog::sequenceOf))
+                    .collect(Collectors.toList());
+        } catch (IOException ex) {
+            log.warn("Unable to list timeline segments in " + dir, ex);
+            return Collections.emptyList();
+        }
+    }
+
+    private static long sequenceOf(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
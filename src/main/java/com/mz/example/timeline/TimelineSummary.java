@@ -0,0 +1,110 @@
+package com.mz.example.timeline;
+
+import lombok.Value;
+
+import java.util.*;
+
+/**
+ * Failover analysis computed from {@link TimelineLog} events:
+ * <ul>
+ *     <li>leaderless windows - time database had no leader in routing table</li>
+ *     <li>convergence - time from leader change to first assignment decision using new leader and to this consumer
+ *     receiving partitions after that decision. Not present when leader changed again before, or when leader moved
+ *     within region and no rebalance was needed.</li>
+ * </ul>
+ * Assignment decisions are recorded only by consumer that led the assignment, so convergence is known only from its
+ * log.
+ */
+@Value
+public class TimelineSummary {
+
+    long from;
+    long to;
+    Map<TimelineEvent.Type, Long> events;
+    long droppedEvents;
+    List<LeaderlessWindow> leaderlessWindows;
+    List<Convergence> convergence;
+
+    @Value
+    public static class LeaderlessWindow {
+        String database;
+        long start;
+        /** null when database still has no leader */
+        Long end;
+        long durationMs;
+    }
+
+    @Value
+    public static class Convergence {
+        String database;
+        String leader;
+        long changedAt;
+        Long assignmentDecisionMs;
+        Long partitionsAssignedMs;
+    }
+
+    static TimelineSummary of(List<TimelineEvent> events, long droppedEvents, long now) {
+        Map<TimelineEvent.Type, Long> counts = new EnumMap<>(TimelineEvent.Type.class);
+        events.forEach(event -> counts.merge(event.getType(), 1L, Long::sum));
+        long from = events.isEmpty() ? now : events.get(0).getTimestamp();
+        return new TimelineSummary(from, now, counts, droppedEvents, leaderlessWindows(events, now),
+                convergence(events));
+    }
+
+    private static List<LeaderlessWindow> leaderlessWindows(List<TimelineEvent> events, long now) {
+        List<LeaderlessWindow> ret = new ArrayList<>();
+        Map<String, Long> leaderlessSince = new HashMap<>();
+        for (TimelineEvent event : events) {
+            if(event.getType() != TimelineEvent.Type.LEADER_CHANGED) {
+                continue;
+            }
+            String database = event.text("database").orElse("");
+            if(!event.text("leader").isPresent()) {
+                leaderlessSince.putIfAbsent(database, event.getTimestamp());
+            } else {
+                Long start = leaderlessSince.remove(database);
+                if(start != null) {
+                    ret.add(new LeaderlessWindow(database, start, event.getTimestamp(), event.getTimestamp() - start));
+                }
+            }
+        }
+        leaderlessSince.forEach((database, start) -> ret.add(new LeaderlessWindow(database, start, null, now - start)));
+        ret.sort(Comparator.comparingLong(LeaderlessWindow::getStart));
+        return ret;
+    }
+
+    private static List<Convergence> convergence(List<TimelineEvent> events) {
+        List<Convergence> ret = new ArrayList<>();
+        for (int change = 0; change < events.size(); change++) {
+            TimelineEvent event = events.get(change);
+            if(event.getType() != TimelineEvent.Type.LEADER_CHANGED) {
+                continue;
+            }
+            Optional<String> leader = event.text("leader");
+            if(!leader.isPresent()) {
+                continue;
+            }
+            String database = event.text("database").orElse("");
+            Long decision = null;
+            Long assigned = null;
+            for (int next = change + 1; next < events.size() && (decision == null || assigned == null); next++) {
+                TimelineEvent later = events.get(next);
+                if(later.getType() == TimelineEvent.Type.LEADER_CHANGED
+                        && later.text("database").orElse("").equals(database)) {
+                    break;
+                }
+                if(decision == null && later.getType() == TimelineEvent.Type.ASSIGNMENT
+                        && later.text("database").orElse("").equals(database)
+                        && later.text("leader").equals(leader)) {
+                    decision = later.getTimestamp() - event.getTimestamp();
+                }
+                if(assigned == null && decision != null
+                        && later.getType() == TimelineEvent.Type.PARTITIONS_ASSIGNED) {
+                    assigned = later.getTimestamp() - event.getTimestamp();
+                }
+            }
+            ret.add(new Convergence(database, leader.get(), event.getTimestamp(), decision, assigned));
+        }
+        return ret;
+    }
+}
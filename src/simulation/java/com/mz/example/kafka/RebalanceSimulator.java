@@ -0,0 +1,160 @@
+package com.mz.example.kafka;
+
+import com.mz.example.neo4j.Neo4jConfiguration;
+import lombok.Value;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Drives groups of {@link RegionalAssignor} consumers through join, leave and neo4j leader change scenarios without
+ * Kafka broker or neo4j cluster, and reports for each scenario and assignor:
+ * <ul>
+ *     <li>number of rebalances, including cooperative follow up rebalances</li>
+ *     <li>total and p99 time spent in assignment</li>
+ *     <li>partitions moved between consumers</li>
+ *     <li>time partitions were written to neo4j leader in other region, in partition-seconds</li>
+ * </ul>
+ * Run: <code>gradlew simulateRebalances [-Pscenario=leader-flap]</code>
+ */
+public class RebalanceSimulator {
+
+    private static final String NEO4J_TOPIC = "kafka_topic";
+    private static final String ORDERS_TOPIC = "orders_topic";
+    private static final String ORDERS_DATABASE = "orders";
+    private static final int PARTITIONS_PER_TOPIC = 24;
+    private static final int MEMBERS = 8;
+    //same as kafka.leaderWatcher defaults
+    private static final long WATCHER_POLL_INTERVAL_MS = 1000;
+    private static final long WATCHER_DEBOUNCE_MS = 5000;
+    private static final long WATCHER_COOLDOWN_MS = 60000;
+
+    private static final String REGION_1_LEADER = "localhost:7685";
+    private static final String REGION_2_LEADER = "localhost:7689";
+
+    @Value
+    static class Report {
+        String scenario;
+        String assignor;
+        int rebalances;
+        long totalAssignmentMicros;
+        long p99AssignmentMicros;
+        long partitionsMoved;
+        double remoteWriteSeconds;
+        double unownedSeconds;
+    }
+
+    public static void main(String[] args) {
+        Set<String> only = new HashSet<>();
+        for (String arg : args) {
+            if(!arg.trim().isEmpty()) {
+                only.addAll(Arrays.asList(arg.split(",")));
+            }
+        }
+        Map<String, Supplier<RegionalAssignor>> assignors = new LinkedHashMap<>();
+        assignors.put("regional", RegionalAssignor::new);
+        assignors.put("sticky", StickyRegionalAssignor::new);
+        assignors.put("cooperative", CooperativeRegionalAssignor::new);
+
+        List<Report> reports = new ArrayList<>();
+        for (Scenario scenario : scenarios()) {
+            if(!only.isEmpty() && !only.contains(scenario.getName())) {
+                continue;
+            }
+            assignors.forEach((name, factory) -> reports.add(run(scenario, name, factory)));
+        }
+        print(reports);
+    }
+
+    static List<Scenario> scenarios() {
+        List<Scenario> ret = new ArrayList<>();
+
+        Scenario scaleOut = new Scenario("scale-out", 180_000).joinAll(0, 2);
+        for (int member = 2; member < 2 * MEMBERS; member++) {
+            scaleOut.join(member * 10_000, Scenario.memberId(member), Scenario.region(member));
+        }
+        ret.add(scaleOut);
+
+        Scenario rollingRestart = new Scenario("rolling-restart", 200_000).joinAll(0, MEMBERS);
+        for (int member = 0; member < MEMBERS; member++) {
+            long restartAt = 20_000 + member * 20_000;
+            rollingRestart.leave(restartAt, Scenario.memberId(member))
+                    .join(restartAt + 5_000, Scenario.memberId(member), Scenario.region(member));
+        }
+        ret.add(rollingRestart);
+
+        ret.add(new Scenario("leader-failover", 120_000).joinAll(0, MEMBERS)
+                .leader(30_000, ORDERS_DATABASE, REGION_1_LEADER));
+
+        Scenario leaderFlap = new Scenario("leader-flap", 240_000).joinAll(0, MEMBERS);
+        for (int flap = 0; flap < 12; flap++) {
+            leaderFlap.leader(20_000 + flap * 8_000, Neo4jConfiguration.NEO4J_DATABASE_NAME,
+                    flap % 2 == 0 ? REGION_2_LEADER : REGION_1_LEADER);
+        }
+        ret.add(leaderFlap);
+
+        ret.add(new Scenario("election-gap", 120_000).joinAll(0, MEMBERS)
+                .leader(30_000, ORDERS_DATABASE, null)
+                .join(35_000, Scenario.memberId(MEMBERS), Scenario.region(MEMBERS))
+                .leader(45_000, ORDERS_DATABASE, REGION_1_LEADER));
+        return ret;
+    }
+
+    static Report run(Scenario scenario, String assignorName, Supplier<RegionalAssignor> assignorFactory) {
+        TopicDatabases topicDatabases = TopicDatabases.parse(Arrays.asList(NEO4J_TOPIC,
+                ORDERS_TOPIC + ":" + ORDERS_DATABASE));
+        ScriptedNeo4jCluster neo4jCluster = new ScriptedNeo4jCluster();
+        //leader of each database starts in other region
+        topicDatabases.getDatabases().forEach(database -> neo4jCluster.setLeader(database,
+                database.equals(ORDERS_DATABASE) ? REGION_2_LEADER : REGION_1_LEADER));
+        Map<String, Integer> partitionsPerTopic = new HashMap<>();
+        topicDatabases.getTopics().forEach(topic -> partitionsPerTopic.put(topic, PARTITIONS_PER_TOPIC));
+        try (SimulatedGroup group = new SimulatedGroup(neo4jCluster, topicDatabases, partitionsPerTopic,
+                assignorFactory, WATCHER_DEBOUNCE_MS, WATCHER_COOLDOWN_MS)) {
+            Iterator<Scenario.Step> steps = scenario.getSteps().iterator();
+            Scenario.Step next = steps.hasNext() ? steps.next() : null;
+            for (long now = 0; now <= scenario.getDurationMs(); now += WATCHER_POLL_INTERVAL_MS) {
+                if(now > 0) {
+                    group.elapse(WATCHER_POLL_INTERVAL_MS);
+                }
+                while (next != null && next.getAtMs() <= now) {
+                    apply(next, group, neo4jCluster);
+                    next = steps.hasNext() ? steps.next() : null;
+                }
+                group.tick(now);
+            }
+            return new Report(scenario.getName(), assignorName, group.getRebalances(),
+                    group.getTotalAssignmentMicros(), group.getAssignmentMicrosPercentile(99),
+                    group.getPartitionsMoved(), group.getRemotePartitionMs() / 1000.0,
+                    group.getUnownedPartitionMs() / 1000.0);
+        }
+    }
+
+    private static void apply(Scenario.Step step, SimulatedGroup group, ScriptedNeo4jCluster neo4jCluster) {
+        switch (step.getAction()) {
+            case JOIN:
+                group.join(step.getTarget(), step.getValue());
+                break;
+            case LEAVE:
+                group.leave(step.getTarget());
+                break;
+            case LEADER:
+                neo4jCluster.setLeader(step.getTarget(), step.getValue());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown step: " + step);
+        }
+    }
+
+    private static void print(List<Report> reports) {
+        String format = "%-16s %-12s %10s %14s %12s %8s %14s %12s%n";
+        System.out.printf(format, "scenario", "assignor", "rebalances", "assign total us", "assign p99 us",
+                "moved", "remote write s", "unowned s");
+        for (Report report : reports) {
+            System.out.printf(format, report.getScenario(), report.getAssignor(), report.getRebalances(),
+                    report.getTotalAssignmentMicros(), report.getP99AssignmentMicros(), report.getPartitionsMoved(),
+                    String.format("%.0f", report.getRemoteWriteSeconds()),
+                    String.format("%.0f", report.getUnownedSeconds()));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.mz.example.kafka;
+
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Script of consumers joining and leaving the group and neo4j leader moving, at simulated time.
+ */
+@Getter
+class Scenario {
+
+    enum Action { JOIN, LEAVE, LEADER }
+
+    @Value
+    static class Step {
+        long atMs;
+        Action action;
+        /** member id for JOIN and LEAVE, database for LEADER */
+        String target;
+        /** region for JOIN, leader address for LEADER - null when database has no leader */
+        String value;
+    }
+
+    private final String name;
+    private final long durationMs;
+    private final List<Step> steps = new ArrayList<>();
+
+    Scenario(String name, long durationMs) {
+        this.name = name;
+        this.durationMs = durationMs;
+    }
+
+    Scenario join(long atMs, String memberId, String region) {
+        return step(new Step(atMs, Action.JOIN, memberId, region));
+    }
+
+    Scenario leave(long atMs, String memberId) {
+        return step(new Step(atMs, Action.LEAVE, memberId, null));
+    }
+
+    Scenario leader(long atMs, String database, String leader) {
+        return step(new Step(atMs, Action.LEADER, database, leader));
+    }
+
+    /**
+     * Members alternate between regions, starting with region-1.
+     */
+    Scenario joinAll(long atMs, int members) {
+        for (int member = 0; member < members; member++) {
+            join(atMs, memberId(member), region(member));
+        }
+        return this;
+    }
+
+    static String memberId(int member) {
+        return String.format("consumer-%02d", member);
+    }
+
+    static String region(int member) {
+        return member % 2 == 0 ? ScriptedNeo4jCluster.REGION_1 : ScriptedNeo4jCluster.REGION_2;
+    }
+
+    private Scenario step(Step step) {
+        steps.add(step);
+        //stable sort keeps order of steps at same time
+        Collections.sort(steps, (s1, s2) -> Long.compare(s1.getAtMs(), s2.getAtMs()));
+        return this;
+    }
+}
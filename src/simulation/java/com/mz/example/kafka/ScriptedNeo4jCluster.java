@@ -0,0 +1,101 @@
+package com.mz.example.kafka;
+
+import com.mz.example.neo4j.Neo4jConfiguration;
+import com.mz.example.neo4j.Neo4jRoutingTable;
+import com.mz.example.neo4j.Neo4jService;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Neo4j cluster of two regions with three servers each, as in <code>cluster-conf</code>. Leader of each database is
+ * set by simulation script, routing tables are built from it so no live cluster is needed.
+ */
+class ScriptedNeo4jCluster {
+
+    static final String REGION_1 = "region-1";
+    static final String REGION_2 = "region-2";
+
+    private final Map<String, List<String>> serversPerRegion = new LinkedHashMap<>();
+    private final Map<String, String> leaders = new ConcurrentHashMap<>();
+
+    ScriptedNeo4jCluster() {
+        serversPerRegion.put(REGION_1, Arrays.asList("localhost:7685", "localhost:7686", "localhost:7687"));
+        serversPerRegion.put(REGION_2, Arrays.asList("localhost:7688", "localhost:7689", "localhost:7690"));
+    }
+
+    List<String> getServers(String region) {
+        return serversPerRegion.get(region);
+    }
+
+    /**
+     * @param leader leader address, null when database has no leader eg.: during election
+     */
+    void setLeader(String database, String leader) {
+        if(leader == null) {
+            leaders.remove(database);
+        } else {
+            leaders.put(database, leader);
+        }
+    }
+
+    Optional<String> getLeaderRegion(String database) {
+        String leader = leaders.get(database);
+        return serversPerRegion.entrySet().stream()
+                .filter(region -> region.getValue().contains(leader))
+                .map(Map.Entry::getKey)
+                .findFirst();
+    }
+
+    Neo4jRoutingTable routingTable(String database) {
+        List<String> all = new ArrayList<>();
+        serversPerRegion.values().forEach(all::addAll);
+        String leader = leaders.get(database);
+        List<String> readers = new ArrayList<>(all);
+        readers.remove(leader);
+        List<Neo4jRoutingTable.Server> servers = new ArrayList<>();
+        if(leader != null) {
+            servers.add(new Neo4jRoutingTable.Server(Collections.singletonList(leader), Neo4jRoutingTable.WRITE_ROLE));
+        }
+        servers.add(new Neo4jRoutingTable.Server(readers, Neo4jRoutingTable.READ_ROLE));
+        servers.add(new Neo4jRoutingTable.Server(all, Neo4jRoutingTable.ROUTE_ROLE));
+        return new Neo4jRoutingTable(300, servers);
+    }
+
+    /**
+     * {@link Neo4jService} of consumer running in given region.
+     */
+    Neo4jService service(String region) {
+        return new ScriptedNeo4jService(this, getServers(region));
+    }
+
+    static class ScriptedNeo4jService extends Neo4jService {
+        private final ScriptedNeo4jCluster cluster;
+        private final List<String> sameDCServers;
+
+        ScriptedNeo4jService(ScriptedNeo4jCluster cluster, List<String> sameDCServers) {
+            this.cluster = cluster;
+            this.sameDCServers = sameDCServers;
+        }
+
+        @Override
+        public Neo4jRoutingTable getCurrentRoutingTable() {
+            return cluster.routingTable(Neo4jConfiguration.NEO4J_DATABASE_NAME);
+        }
+
+        @Override
+        public Neo4jRoutingTable getCachedRoutingTable(String database, String policy) {
+            return cluster.routingTable(database);
+        }
+
+        @Override
+        public Neo4jRoutingTable getFreshRoutingTable(String database, String policy) {
+            return cluster.routingTable(database);
+        }
+
+        @Override
+        public List<String> getSameDCServers() {
+            return sameDCServers;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.mz.example.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor;
+import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor.*;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in for Kafka group coordinator. Runs rebalance the way consumer and coordinator do: every member
+ * sends subscription with its assignor's user data, first member assigns partitions for the whole group and every
+ * member receives its assignment. With cooperative protocol members revoke partitions they lost and follow up
+ * rebalance is run until no partition is revoked.<br/>
+ * Each member follows leaders with its own {@link LeaderLocalityDebouncer}, same as its {@link LeaderChangeWatcher} -
+ * rebalance is run when any member's leader change is accepted.
+ */
+class SimulatedGroup implements AutoCloseable {
+
+    private static final String GROUP_ID = "simulated-group";
+
+    private final ScriptedNeo4jCluster neo4jCluster;
+    private final TopicDatabases topicDatabases;
+    private final Cluster kafkaCluster;
+    private final Supplier<RegionalAssignor> assignorFactory;
+    private final long watcherDebounceMs;
+    private final long watcherCooldownMs;
+
+    private final SortedMap<String, Member> members = new TreeMap<>();
+    private final Map<TopicPartition, String> owners = new HashMap<>();
+    private int generation;
+    private boolean joinRequested;
+
+    private int rebalances;
+    private final List<Long> assignmentNanos = new ArrayList<>();
+    private long partitionsMoved;
+    private long remotePartitionMs;
+    private long unownedPartitionMs;
+
+    private static class Member {
+        private final String region;
+        private final RegionalAssignor assignor;
+        private final LeaderLocalityDebouncer watcher;
+        private List<TopicPartition> owned = new ArrayList<>();
+
+        private Member(String region, RegionalAssignor assignor, LeaderLocalityDebouncer watcher) {
+            this.region = region;
+            this.assignor = assignor;
+            this.watcher = watcher;
+        }
+    }
+
+    SimulatedGroup(ScriptedNeo4jCluster neo4jCluster, TopicDatabases topicDatabases,
+                   Map<String, Integer> partitionsPerTopic, Supplier<RegionalAssignor> assignorFactory,
+                   long watcherDebounceMs, long watcherCooldownMs) {
+        this.neo4jCluster = neo4jCluster;
+        this.topicDatabases = topicDatabases;
+        this.assignorFactory = assignorFactory;
+        this.watcherDebounceMs = watcherDebounceMs;
+        this.watcherCooldownMs = watcherCooldownMs;
+        List<PartitionInfo> partitions = new ArrayList<>();
+        partitionsPerTopic.forEach((topic, count) -> {
+            for (int partition = 0; partition < count; partition++) {
+                partitions.add(new PartitionInfo(topic, partition, Node.noNode(), new Node[0], new Node[0]));
+            }
+        });
+        this.kafkaCluster = new Cluster(GROUP_ID, Collections.emptyList(), partitions, Collections.emptySet(),
+                Collections.emptySet());
+    }
+
+    void join(String memberId, String region) {
+        RegionalAssignor assignor = assignorFactory.get();
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(KafkaConfiguration.NEO4J_SERVICE_PROPERTY, neo4jCluster.service(region));
+        configs.put(KafkaConfiguration.METER_REGISTRY_PROPERTY, new SimpleMeterRegistry());
+        configs.put(KafkaConfiguration.TOPIC_DATABASES_PROPERTY, topicDatabases);
+        configs.put(KafkaConfiguration.LATENCY_PROBE_INTERVAL_MS_PROPERTY, 0);
+        assignor.configure(configs);
+        members.put(memberId, new Member(region, assignor,
+                new LeaderLocalityDebouncer(watcherDebounceMs, watcherCooldownMs)));
+        joinRequested = true;
+    }
+
+    /**
+     * Member leaves the group gracefully, its partitions are free to be assigned in next rebalance.
+     */
+    void leave(String memberId) {
+        Member member = members.remove(memberId);
+        if(member != null) {
+            member.assignor.close();
+            member.owned.forEach(owners::remove);
+            joinRequested = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        members.values().forEach(member -> member.assignor.close());
+    }
+
+    /**
+     * Accounts time partitions spent written to remote leader or without owner since previous call.
+     */
+    void elapse(long elapsedMs) {
+        for (TopicPartition tp : allPartitions()) {
+            String owner = owners.get(tp);
+            if(owner == null) {
+                unownedPartitionMs += elapsedMs;
+                continue;
+            }
+            Optional<String> leaderRegion = neo4jCluster.getLeaderRegion(topicDatabases.getDatabase(tp.topic()));
+            if(leaderRegion.isPresent() && !leaderRegion.get().equals(members.get(owner).region)) {
+                remotePartitionMs += elapsedMs;
+            }
+        }
+    }
+
+    /**
+     * Lets leader watcher of each member check leaders and runs rebalance when it was requested.
+     */
+    void tick(long now) {
+        if(checkLeaders(now)) {
+            joinRequested = true;
+        }
+        if(joinRequested && !members.isEmpty()) {
+            joinRequested = false;
+            rebalance();
+        }
+    }
+
+    private boolean checkLeaders(long now) {
+        boolean requested = false;
+        for (String database : topicDatabases.getDatabases()) {
+            Optional<String> leaderRegion = neo4jCluster.getLeaderRegion(database);
+            if(!leaderRegion.isPresent()) {
+                continue;
+            }
+            for (Member member : members.values()) {
+                LeaderLocalityDebouncer.Locality observed = leaderRegion.get().equals(member.region)
+                        ? LeaderLocalityDebouncer.Locality.LOCAL : LeaderLocalityDebouncer.Locality.REMOTE;
+                requested |= member.watcher.observe(database, observed, now)
+                        == LeaderLocalityDebouncer.Decision.REBALANCE;
+            }
+        }
+        return requested;
+    }
+
+    private void rebalance() {
+        Map<TopicPartition, String> ownersBefore = new HashMap<>(owners);
+        boolean cooperative = members.values().stream()
+                .allMatch(member -> member.assignor.supportedProtocols().contains(RebalanceProtocol.COOPERATIVE));
+        boolean revoked;
+        do {
+            revoked = false;
+            rebalances++;
+            generation++;
+            if(!cooperative) {
+                //eager members revoke everything before joining
+                members.values().forEach(member -> member.owned = new ArrayList<>());
+                owners.clear();
+            }
+            Map<String, Subscription> subscriptions = new HashMap<>();
+            members.forEach((memberId, member) -> {
+                List<String> topics = new ArrayList<>(topicDatabases.getTopics());
+                ByteBuffer userData = member.assignor.subscriptionUserData(new HashSet<>(topics));
+                subscriptions.put(memberId, new Subscription(topics, userData, member.owned));
+            });
+
+            ConsumerPartitionAssignor groupLeader = members.get(members.firstKey()).assignor;
+            long startedAt = System.nanoTime();
+            GroupAssignment assignment = groupLeader.assign(kafkaCluster, new GroupSubscription(subscriptions));
+            assignmentNanos.add(System.nanoTime() - startedAt);
+
+            for (Map.Entry<String, Member> entry : members.entrySet()) {
+                Member member = entry.getValue();
+                Assignment memberAssignment = assignment.groupAssignment().get(entry.getKey());
+                List<TopicPartition> assigned = memberAssignment == null ? Collections.emptyList()
+                        : memberAssignment.partitions();
+                for (TopicPartition tp : assigned) {
+                    String owner = owners.get(tp);
+                    if(owner != null && !owner.equals(entry.getKey())) {
+                        throw new IllegalStateException(tp + " assigned to " + entry.getKey()
+                                + " while still owned by " + owner);
+                    }
+                }
+                member.owned.stream()
+                        .filter(tp -> !assigned.contains(tp))
+                        .forEach(owners::remove);
+                revoked |= !assigned.containsAll(member.owned);
+                member.owned = new ArrayList<>(assigned);
+                assigned.forEach(tp -> owners.put(tp, entry.getKey()));
+                member.assignor.onAssignment(new Assignment(assigned,
+                                memberAssignment == null ? null : memberAssignment.userData()),
+                        new ConsumerGroupMetadata(GROUP_ID, generation, entry.getKey(), Optional.empty()));
+            }
+        } while (cooperative && revoked);
+        ownersBefore.forEach((tp, owner) -> {
+            if(owners.containsKey(tp) && !owner.equals(owners.get(tp))) {
+                partitionsMoved++;
+            }
+        });
+    }
+
+    private List<TopicPartition> allPartitions() {
+        List<TopicPartition> ret = new ArrayList<>();
+        for (String topic : kafkaCluster.topics()) {
+            for (PartitionInfo partition : kafkaCluster.partitionsForTopic(topic)) {
+                ret.add(new TopicPartition(topic, partition.partition()));
+            }
+        }
+        return ret;
+    }
+
+    int getRebalances() {
+        return rebalances;
+    }
+
+    long getTotalAssignmentMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(assignmentNanos.stream().mapToLong(Long::longValue).sum());
+    }
+
+    long getAssignmentMicrosPercentile(double percentile) {
+        if(assignmentNanos.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(assignmentNanos);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted.get(Math.max(0, index)));
+    }
+
+    long getPartitionsMoved() {
+        return partitionsMoved;
+    }
+
+    /**
+     * @return sum of time each partition was owned by consumer in other region than leader of its database
+     */
+    long getRemotePartitionMs() {
+        return remotePartitionMs;
+    }
+
+    long getUnownedPartitionMs() {
+        return unownedPartitionMs;
+    }
+}
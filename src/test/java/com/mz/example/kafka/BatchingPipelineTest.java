@@ -0,0 +1,193 @@
+package com.mz.example.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Writer completes batches only when test says so. Batch size is 2, so every two added records are sent as batch.
+ */
+class BatchingPipelineTest {
+
+    private static final long DRAIN_TIMEOUT_MS = 50;
+
+    private final TopicPartition p0 = new TopicPartition("events", 0);
+    private final TopicPartition p1 = new TopicPartition("events", 1);
+    private final List<CompletableFuture<Void>> writes = new ArrayList<>();
+    private final List<List<Map<String, Object>>> batches = new ArrayList<>();
+    private BatchingPipeline pipeline;
+
+    @BeforeEach
+    void setup() {
+        pipeline = new BatchingPipeline(rows -> {
+            CompletableFuture<Void> write = new CompletableFuture<>();
+            writes.add(write);
+            batches.add(rows);
+            return write;
+        }, 2, 60000, 10);
+    }
+
+    @Test
+    void offsetsAreCommittedInPollOrder() {
+        add(p0, 0);
+        add(p0, 1);
+        add(p1, 0);
+        add(p1, 1);
+        complete(1);
+
+        //first batch still in flight
+        assertThat(pipeline.takeWritten().getCommit()).isEmpty();
+
+        complete(0);
+
+        assertThat(pipeline.takeWritten().getCommit()).containsOnly(commit(p0, 2), commit(p1, 2));
+        assertThat(pipeline.getStats().getRecordsInFlight()).isZero();
+    }
+
+    @Test
+    void failedBatchRewindsToMinimumOffsetPerPartition() {
+        add(p0, 10);
+        add(p0, 11);
+        add(p0, 12);
+        add(p1, 20);
+        add(p1, 21);
+        add(p0, 13);
+        //waits for linger time in current batch
+        add(p1, 22);
+        complete(2);
+        writes.get(0).completeExceptionally(new IllegalStateException("leader unavailable"));
+
+        IngestPipeline.Progress progress = pipeline.takeWritten();
+
+        assertThat(progress.getCommit()).isEmpty();
+        assertThat(progress.getRewind()).containsOnly(entry(p0, 10L), entry(p1, 20L));
+        assertThat(pipeline.getStats().getBatchesFailed()).isEqualTo(1);
+        assertThat(pipeline.getStats().getRecordsInFlight()).isZero();
+        //dropped records are not sent again before they are consumed again
+        pipeline.flush();
+        assertThat(writes).hasSize(3);
+    }
+
+    @Test
+    void drainTimeoutAbandonsLaterBatches() {
+        add(p0, 0);
+        add(p1, 0);
+        add(p1, 1);
+        add(p1, 2);
+        add(p0, 1);
+        add(p1, 3);
+        complete(1);
+
+        IngestPipeline.Progress progress = pipeline.drain(Collections.singletonList(p0), DRAIN_TIMEOUT_MS);
+
+        //first batch of p0 was not written in time, nothing after it can be committed
+        assertThat(progress.getCommit()).isEmpty();
+        //p1 stays assigned and is consumed again from its first record in abandoned batches
+        assertThat(progress.getRewind()).containsOnly(entry(p1, 0L));
+        assertThat(pipeline.getStats().getRecordsInFlight()).isZero();
+
+        //abandoned batches finishing later change nothing
+        complete(0);
+        complete(2);
+        assertThat(pipeline.takeWritten().getCommit()).isEmpty();
+    }
+
+    @Test
+    void drainSendsCurrentBatchAndDoesNotRewindDrainedPartitions() {
+        add(p0, 0);
+        add(p0, 1);
+        add(p1, 0);
+        add(p1, 1);
+        complete(0);
+        complete(1);
+        add(p0, 2);
+
+        IngestPipeline.Progress progress = pipeline.drain(Collections.singletonList(p0), DRAIN_TIMEOUT_MS);
+
+        //current batch was sent, but not written in time
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(2)).extracting(row -> row.get("offset")).containsExactly(2L);
+        assertThat(progress.getCommit()).containsOnly(commit(p0, 2), commit(p1, 2));
+        //new owner of p0 consumes it from committed offset
+        assertThat(progress.getRewind()).isEmpty();
+    }
+
+    @Test
+    void partialRevokeLeavesBatchesOfOtherPartitionsInFlight() {
+        add(p1, 0);
+        add(p1, 1);
+        add(p0, 0);
+        add(p0, 1);
+        add(p1, 2);
+        add(p1, 3);
+        complete(1);
+
+        IngestPipeline.Progress progress = pipeline.drain(Collections.singletonList(p0), DRAIN_TIMEOUT_MS);
+
+        //p0 batch was written, even though p1 batch before it was not
+        assertThat(progress.getCommit()).containsOnly(commit(p0, 2));
+        assertThat(progress.getRewind()).isEmpty();
+        assertThat(pipeline.getStats().getRecordsInFlight()).isEqualTo(6);
+
+        complete(0);
+        complete(2);
+
+        //revoked partition is no longer committed
+        assertThat(pipeline.takeWritten().getCommit()).containsOnly(commit(p1, 4));
+    }
+
+    @Test
+    void dropForgetsPartitionWithoutWaiting() {
+        add(p0, 0);
+        add(p1, 0);
+        add(p0, 1);
+
+        pipeline.drop(Collections.singletonList(p0));
+        pipeline.flush();
+        complete(0);
+
+        //p0 record of current batch was not sent
+        assertThat(writes).hasSize(1);
+        assertThat(pipeline.takeWritten().getCommit()).containsOnly(commit(p1, 1));
+    }
+
+    @Test
+    void dropRemovesWrittenOffsetsNotYetTaken() {
+        pipeline = new BatchingPipeline(rows -> {
+            CompletableFuture<Void> write = new CompletableFuture<>();
+            writes.add(write);
+            return write;
+        }, 2, 60000, 1);
+        add(p0, 0);
+        add(p1, 0);
+        complete(0);
+        //sending second batch waits for first one, its offsets wait for takeWritten
+        add(p0, 1);
+        add(p1, 1);
+
+        pipeline.drop(Collections.singletonList(p0));
+        complete(1);
+
+        assertThat(pipeline.takeWritten().getCommit()).containsOnly(commit(p1, 2));
+    }
+
+    private void add(TopicPartition tp, long offset) {
+        pipeline.add(new ConsumerRecord<>(tp.topic(), tp.partition(), offset, new byte[0], new byte[0]));
+    }
+
+    private void complete(int batch) {
+        writes.get(batch).complete(null);
+    }
+
+    private static Map.Entry<TopicPartition, OffsetAndMetadata> commit(TopicPartition tp, long offset) {
+        return entry(tp, new OffsetAndMetadata(offset));
+    }
+}
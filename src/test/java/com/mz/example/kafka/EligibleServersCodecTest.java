@@ -0,0 +1,128 @@
+package com.mz.example.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Consumer encodes servers it is eligible to write to and assignment leader decodes them.
+ */
+class EligibleServersCodecTest {
+
+    private static final ServerTopology TOPOLOGY = new ServerTopology(Arrays.asList("a:7687", "b:7687", "c:7687"));
+    private static final List<String> SAME_DC_SERVERS = Arrays.asList("a:7687", "c:7687");
+
+    private final EligibleServersCodec consumer = new EligibleServersCodec(true);
+    private final EligibleServersCodec leader = new EligibleServersCodec(true);
+
+    @Test
+    void legacyRoundTrip() {
+        ByteBuffer payload = consumer.encode(SAME_DC_SERVERS);
+
+        assertThat(payload.get(0)).isEqualTo(EligibleServersCodec.LEGACY_VERSION);
+        MemberLocality locality = leader.decode(payload);
+        assertThat(locality.getEligibleServers()).containsExactlyElementsOf(SAME_DC_SERVERS);
+        assertThat(locality.getLatencyMicros()).isEmpty();
+    }
+
+    @Test
+    void compactRoundTrip() {
+        knowTopology(consumer, leader);
+        consumer.topologiesAcknowledged(leader.encodeKnownTopologies());
+
+        ByteBuffer payload = consumer.encode(SAME_DC_SERVERS);
+
+        assertThat(payload.get(0)).isEqualTo(EligibleServersCodec.COMPACT_VERSION);
+        assertThat(payload.remaining())
+                .isLessThan(new EligibleServersCodec(false).encode(SAME_DC_SERVERS).remaining());
+        MemberLocality locality = leader.decode(payload);
+        assertThat(locality.getEligibleServers()).containsExactlyInAnyOrderElementsOf(SAME_DC_SERVERS);
+        assertThat(locality.getLatencyMicros()).isEmpty();
+    }
+
+    @Test
+    void compactWithLatencyRoundTrip() {
+        knowTopology(consumer, leader);
+        consumer.topologiesAcknowledged(leader.encodeKnownTopologies());
+        Map<String, Integer> latencyMicros = new HashMap<>();
+        latencyMicros.put("a:7687", 1234);
+        latencyMicros.put("b:7687", 98760);
+
+        ByteBuffer payload = consumer.encode(SAME_DC_SERVERS, latencyMicros);
+
+        assertThat(payload.get(0)).isEqualTo(EligibleServersCodec.COMPACT_WITH_LATENCY_VERSION);
+        MemberLocality locality = leader.decode(payload);
+        assertThat(locality.getEligibleServers()).containsExactlyInAnyOrderElementsOf(SAME_DC_SERVERS);
+        //rounded to latency resolution, c:7687 was not reached
+        assertThat(locality.getLatencyMicros()).containsOnly(entry("a:7687", 1200), entry("b:7687", 98800));
+    }
+
+    @Test
+    void legacyIsSentUntilLeaderAcknowledgesTopology() {
+        knowTopology(consumer);
+        leader.topologyChanged(new ServerTopology(Arrays.asList("a:7687", "b:7687")));
+        consumer.topologiesAcknowledged(leader.encodeKnownTopologies());
+
+        ByteBuffer payload = consumer.encode(SAME_DC_SERVERS);
+
+        assertThat(payload.get(0)).isEqualTo(EligibleServersCodec.LEGACY_VERSION);
+        assertThat(leader.decode(payload).getEligibleServers()).containsExactlyElementsOf(SAME_DC_SERVERS);
+    }
+
+    @Test
+    void legacyIsSentForServerOutsideOfTopology() {
+        knowTopology(consumer, leader);
+        consumer.topologiesAcknowledged(leader.encodeKnownTopologies());
+        List<String> servers = Arrays.asList("a:7687", "d:7687");
+
+        ByteBuffer payload = consumer.encode(servers);
+
+        assertThat(payload.get(0)).isEqualTo(EligibleServersCodec.LEGACY_VERSION);
+        assertThat(leader.decode(payload).getEligibleServers()).containsExactlyElementsOf(servers);
+    }
+
+    @Test
+    void compactPayloadOfUnknownTopologyIsRejected() {
+        knowTopology(consumer, leader);
+        consumer.topologiesAcknowledged(leader.encodeKnownTopologies());
+        ByteBuffer payload = consumer.encode(SAME_DC_SERVERS);
+
+        //new assignment leader has not seen the topology yet
+        EligibleServersCodec newLeader = new EligibleServersCodec(true);
+
+        assertThatThrownBy(() -> newLeader.decode(payload))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unknown neo4j server topology fingerprint");
+        //consumer falls back to legacy after new leader returns topologies it knows
+        consumer.topologiesAcknowledged(newLeader.encodeKnownTopologies());
+        assertThat(consumer.encode(SAME_DC_SERVERS).get(0)).isEqualTo(EligibleServersCodec.LEGACY_VERSION);
+    }
+
+    @Test
+    void identicalPayloadIsDecodedOnce() {
+        knowTopology(consumer, leader);
+        consumer.topologiesAcknowledged(leader.encodeKnownTopologies());
+        ByteBuffer payload = consumer.encode(SAME_DC_SERVERS);
+        //same bytes sent by other consumer of the data center
+        ByteBuffer samePayload = consumer.encode(SAME_DC_SERVERS);
+
+        MemberLocality first = leader.decode(payload);
+
+        assertThat(leader.decode(samePayload)).isSameAs(first);
+        assertThat(leader.decode(consumer.encode(Collections.singletonList("a:7687")))).isNotSameAs(first);
+        //position is not changed, so payload can be read again
+        assertThat(payload.position()).isZero();
+        assertThat(samePayload.position()).isZero();
+    }
+
+    private static void knowTopology(EligibleServersCodec... codecs) {
+        for (EligibleServersCodec codec : codecs) {
+            codec.topologyChanged(TOPOLOGY);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mz.example.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import static com.mz.example.kafka.LeaderLocalityDebouncer.Decision.*;
+import static com.mz.example.kafka.LeaderLocalityDebouncer.Locality.LOCAL;
+import static com.mz.example.kafka.LeaderLocalityDebouncer.Locality.REMOTE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeaderLocalityDebouncerTest {
+
+    private static final long DEBOUNCE_MS = 5000;
+    private static final long COOLDOWN_MS = 60000;
+
+    private final LeaderLocalityDebouncer debouncer = new LeaderLocalityDebouncer(DEBOUNCE_MS, COOLDOWN_MS);
+
+    @Test
+    void firstObservationIsAccepted() {
+        assertThat(debouncer.getAcceptedSince("neo4j")).isEqualTo(-1);
+
+        assertThat(debouncer.observe("neo4j", REMOTE, 1000)).isEqualTo(NONE);
+        assertThat(debouncer.observe("neo4j", REMOTE, 2000)).isEqualTo(NONE);
+        assertThat(debouncer.getAcceptedSince("neo4j")).isEqualTo(1000);
+    }
+
+    @Test
+    void changeIsAcceptedAfterDebounce() {
+        debouncer.observe("neo4j", LOCAL, 0);
+
+        assertThat(debouncer.observe("neo4j", REMOTE, 1000)).isEqualTo(CANDIDATE);
+        assertThat(debouncer.observe("neo4j", REMOTE, 1000 + DEBOUNCE_MS - 1)).isEqualTo(NONE);
+        assertThat(debouncer.observe("neo4j", REMOTE, 1000 + DEBOUNCE_MS)).isEqualTo(REBALANCE);
+        assertThat(debouncer.getAcceptedSince("neo4j")).isEqualTo(1000);
+        assertThat(debouncer.observe("neo4j", REMOTE, 2000 + DEBOUNCE_MS)).isEqualTo(NONE);
+    }
+
+    @Test
+    void flapWithinDebounceIsIgnored() {
+        debouncer.observe("neo4j", LOCAL, 0);
+
+        assertThat(debouncer.observe("neo4j", REMOTE, 1000)).isEqualTo(CANDIDATE);
+        assertThat(debouncer.observe("neo4j", LOCAL, 2000)).isEqualTo(RETURNED);
+        assertThat(debouncer.observe("neo4j", REMOTE, 3000)).isEqualTo(CANDIDATE);
+        //debounce starts over
+        assertThat(debouncer.observe("neo4j", REMOTE, 1000 + DEBOUNCE_MS)).isEqualTo(NONE);
+        assertThat(debouncer.observe("neo4j", REMOTE, 3000 + DEBOUNCE_MS)).isEqualTo(REBALANCE);
+    }
+
+    @Test
+    void rebalancesAreAcceptedAtMostOncePerCooldownAcrossDatabases() {
+        debouncer.observe("neo4j", LOCAL, 0);
+        debouncer.observe("orders", LOCAL, 0);
+        debouncer.observe("neo4j", REMOTE, 1000);
+        debouncer.observe("orders", REMOTE, 1000);
+
+        assertThat(debouncer.observe("neo4j", REMOTE, 1000 + DEBOUNCE_MS)).isEqualTo(REBALANCE);
+        assertThat(debouncer.observe("orders", REMOTE, 1000 + DEBOUNCE_MS)).isEqualTo(NONE);
+        assertThat(debouncer.observe("orders", REMOTE, 1000 + DEBOUNCE_MS + COOLDOWN_MS - 1)).isEqualTo(NONE);
+        assertThat(debouncer.observe("orders", REMOTE, 1000 + DEBOUNCE_MS + COOLDOWN_MS)).isEqualTo(REBALANCE);
+    }
+
+    @Test
+    void firstChangeIsNotHeldByCooldown() {
+        debouncer.observe("neo4j", LOCAL, 0);
+        debouncer.observe("neo4j", REMOTE, 0);
+
+        assertThat(debouncer.observe("neo4j", REMOTE, DEBOUNCE_MS)).isEqualTo(REBALANCE);
+    }
+}
@@ -0,0 +1,154 @@
+package com.mz.example.kafka;
+
+import com.mz.example.timeline.TimelineLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LeaderLocalityGuardTest {
+
+    private static final long MAX_PAUSE_MS = 60000;
+    private static final String LOCAL = "local:7687";
+    private static final String REMOTE = "remote:7687";
+
+    private final TopicPartition events = new TopicPartition("events", 0);
+    private final TopicPartition orders = new TopicPartition("orders", 0);
+    private final TopicDatabases topicDatabases = new TopicDatabases(mapOf("events", "neo4j", "orders", "orders"));
+    private final Map<String, String> leaders = new HashMap<>();
+    private PartitionPauses pauses;
+
+    @BeforeEach
+    void setup() {
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        when(consumer.assignment()).thenReturn(new HashSet<>(Arrays.asList(events, orders)));
+        pauses = new PartitionPauses(consumer, new SimpleMeterRegistry(), new TimelineLog());
+        leaders.put("neo4j", LOCAL);
+        leaders.put("orders", LOCAL);
+    }
+
+    @Test
+    void pausesPartitionsOfRemoteLeaderUntilItIsBack() {
+        LeaderLocalityGuard guard = guard(LeaderLocalityGuard.Mode.PAUSE, MAX_PAUSE_MS);
+        leaders.put("neo4j", REMOTE);
+
+        guard.afterPoll(ConsumerRecords.empty(), pauses, 0);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.REMOTE_LEADER)).isTrue();
+        assertThat(pauses.isPaused(orders, PartitionPauses.Reason.REMOTE_LEADER)).isFalse();
+        assertThat(guard.maxPollWaitMs(5000)).isEqualTo(LeaderLocalityGuard.PAUSED_POLL_WAIT_MS);
+
+        leaders.put("neo4j", LOCAL);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, 1000);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.REMOTE_LEADER)).isFalse();
+        assertThat(guard.maxPollWaitMs(5000)).isEqualTo(5000);
+    }
+
+    @Test
+    void unknownLeaderDoesNotPause() {
+        LeaderLocalityGuard guard = guard(LeaderLocalityGuard.Mode.PAUSE, MAX_PAUSE_MS);
+        leaders.remove("neo4j");
+
+        guard.afterPoll(ConsumerRecords.empty(), pauses, 0);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.REMOTE_LEADER)).isFalse();
+    }
+
+    @Test
+    void pauseIsReplacedByThrottleAfterMaxPause() {
+        LeaderLocalityGuard guard = guard(LeaderLocalityGuard.Mode.PAUSE, MAX_PAUSE_MS);
+        leaders.put("neo4j", REMOTE);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, 0);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, MAX_PAUSE_MS - 1);
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.REMOTE_LEADER)).isTrue();
+
+        guard.afterPoll(ConsumerRecords.empty(), pauses, MAX_PAUSE_MS);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.REMOTE_LEADER)).isFalse();
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.THROTTLE)).isFalse();
+
+        //twice the throttle rate
+        guard.afterPoll(records(events, 20), pauses, MAX_PAUSE_MS + 100);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.THROTTLE)).isTrue();
+        assertThat(pauses.isPaused(orders, PartitionPauses.Reason.THROTTLE)).isFalse();
+
+        leaders.put("neo4j", LOCAL);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, MAX_PAUSE_MS + 200);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.THROTTLE)).isFalse();
+    }
+
+    @Test
+    void pauseStartsOverWhenLeaderMovesAwayAgain() {
+        LeaderLocalityGuard guard = guard(LeaderLocalityGuard.Mode.PAUSE, MAX_PAUSE_MS);
+        leaders.put("neo4j", REMOTE);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, 0);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, MAX_PAUSE_MS);
+        leaders.put("neo4j", LOCAL);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, MAX_PAUSE_MS + 1000);
+
+        leaders.put("neo4j", REMOTE);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, MAX_PAUSE_MS + 2000);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.REMOTE_LEADER)).isTrue();
+    }
+
+    @Test
+    void pauseWithoutLimitIsNotThrottled() {
+        LeaderLocalityGuard guard = guard(LeaderLocalityGuard.Mode.PAUSE, 0);
+        leaders.put("neo4j", REMOTE);
+
+        guard.afterPoll(ConsumerRecords.empty(), pauses, 0);
+        guard.afterPoll(ConsumerRecords.empty(), pauses, 10 * MAX_PAUSE_MS);
+
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.REMOTE_LEADER)).isTrue();
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.THROTTLE)).isFalse();
+    }
+
+    @Test
+    void throttleModeThrottlesRightAway() {
+        LeaderLocalityGuard guard = guard(LeaderLocalityGuard.Mode.THROTTLE, MAX_PAUSE_MS);
+        leaders.put("orders", REMOTE);
+
+        guard.afterPoll(records(orders, 5), pauses, 0);
+        assertThat(pauses.isPaused(orders, PartitionPauses.Reason.THROTTLE)).isFalse();
+
+        guard.afterPoll(records(orders, 20), pauses, 100);
+
+        assertThat(pauses.isPaused(orders, PartitionPauses.Reason.THROTTLE)).isTrue();
+        assertThat(pauses.isPaused(orders, PartitionPauses.Reason.REMOTE_LEADER)).isFalse();
+        assertThat(pauses.isPaused(events, PartitionPauses.Reason.THROTTLE)).isFalse();
+    }
+
+    private LeaderLocalityGuard guard(LeaderLocalityGuard.Mode mode, long maxPauseMs) {
+        return new LeaderLocalityGuard(mode, 10, maxPauseMs, topicDatabases,
+                database -> Optional.ofNullable(leaders.get(database)), () -> Collections.singletonList(LOCAL));
+    }
+
+    private static ConsumerRecords<String, String> records(TopicPartition tp, int count) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int offset = 0; offset < count; offset++) {
+            records.add(new ConsumerRecord<>(tp.topic(), tp.partition(), offset, "key", "value"));
+        }
+        return new ConsumerRecords<>(Collections.singletonMap(tp, records));
+    }
+
+    private static Map<String, String> mapOf(String... keyValues) {
+        Map<String, String> ret = new LinkedHashMap<>();
+        for (int key = 0; key < keyValues.length; key += 2) {
+            ret.put(keyValues[key], keyValues[key + 1]);
+        }
+        return ret;
+    }
+}
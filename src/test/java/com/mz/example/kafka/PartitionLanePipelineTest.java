@@ -0,0 +1,183 @@
+package com.mz.example.kafka;
+
+import com.mz.example.timeline.TimelineLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lanes run on real workers, writer completes batches only when test says so. Batch size is 2, so every two added
+ * records of a partition are sent as batch. Test waits for workers only where the pipeline is expected to move on.
+ */
+class PartitionLanePipelineTest {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final int MAX_QUEUED_RECORDS = 4;
+
+    private final TopicPartition p0 = new TopicPartition("events", 0);
+    private final TopicPartition p1 = new TopicPartition("events", 1);
+    private final Map<TopicPartition, BlockingQueue<Write>> writes = new ConcurrentHashMap<>();
+    private PartitionLanePipeline pipeline;
+    private PartitionPauses pauses;
+
+    private static class Write {
+        private final List<Map<String, Object>> rows;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private Write(List<Map<String, Object>> rows) {
+            this.rows = rows;
+        }
+    }
+
+    @BeforeEach
+    void setup() {
+        pipeline = new PartitionLanePipeline(rows -> {
+            Write write = new Write(rows);
+            TopicPartition tp = new TopicPartition((String) rows.get(0).get("topic"),
+                    (Integer) rows.get(0).get("partition"));
+            writes(tp).add(write);
+            return write.result;
+        }, 2, 2, MAX_QUEUED_RECORDS);
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        when(consumer.assignment()).thenReturn(new HashSet<>(Arrays.asList(p0, p1)));
+        pauses = new PartitionPauses(consumer, new SimpleMeterRegistry(), new TimelineLog());
+    }
+
+    @AfterEach
+    void close() {
+        pipeline.close();
+    }
+
+    @Test
+    void onlyContiguouslyWrittenOffsetsAreCommitted() throws Exception {
+        add(p0, 0, 4);
+        add(p1, 0, 2);
+        Write p0First = nextWrite(p0);
+        nextWrite(p1).result.complete(null);
+
+        assertThat(awaitProgress(progress -> !progress.getCommit().isEmpty()).getCommit())
+                .containsOnly(commit(p1, 2));
+        //next batch of the lane waits for the first one
+        assertThat(writes(p0)).isEmpty();
+
+        p0First.result.complete(null);
+        Write p0Second = nextWrite(p0);
+
+        assertThat(awaitProgress(progress -> !progress.getCommit().isEmpty()).getCommit())
+                .containsOnly(commit(p0, 2));
+
+        p0Second.result.complete(null);
+
+        assertThat(awaitProgress(progress -> !progress.getCommit().isEmpty()).getCommit())
+                .containsOnly(commit(p0, 4));
+    }
+
+    @Test
+    void failedLaneRewindsToFirstUnwrittenOffset() throws Exception {
+        add(p0, 0, 6);
+        nextWrite(p0).result.complete(null);
+        nextWrite(p0).result.completeExceptionally(new IllegalStateException("leader unavailable"));
+
+        IngestPipeline.Progress progress = awaitProgress(taken -> !taken.getRewind().isEmpty());
+
+        assertThat(progress.getCommit()).containsOnly(commit(p0, 2));
+        assertThat(progress.getRewind()).containsOnly(entry(p0, 2L));
+        assertThat(pipeline.getStats().getBatchesFailed()).isEqualTo(1);
+        assertThat(pipeline.getStats().getRecordsInFlight()).isZero();
+        //batch queued after the failed one was dropped, lane starts over from consumed again records
+        assertThat(writes(p0)).isEmpty();
+        add(p0, 2, 2);
+        assertThat(nextWrite(p0).rows).extracting(row -> row.get("offset")).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void fullLanePausesPartitionUntilItIsBelowHalfOfLimit() throws Exception {
+        add(p0, 0, 6);
+        add(p1, 0, 2);
+
+        pipeline.afterPoll(pauses);
+
+        assertThat(pauses.isPaused(p0, PartitionPauses.Reason.BACKPRESSURE)).isTrue();
+        assertThat(pauses.isPaused(p1, PartitionPauses.Reason.BACKPRESSURE)).isFalse();
+
+        nextWrite(p0).result.complete(null);
+        awaitRecordsInFlight(4 + 2);
+        pipeline.afterPoll(pauses);
+
+        //limit is no longer exceeded, but lane is not below half of it yet
+        assertThat(pauses.isPaused(p0, PartitionPauses.Reason.BACKPRESSURE)).isTrue();
+
+        nextWrite(p0).result.complete(null);
+        awaitRecordsInFlight(2 + 2);
+        pipeline.afterPoll(pauses);
+
+        assertThat(pauses.isPaused(p0, PartitionPauses.Reason.BACKPRESSURE)).isFalse();
+    }
+
+    private BlockingQueue<Write> writes(TopicPartition tp) {
+        return writes.computeIfAbsent(tp, partition -> new LinkedBlockingQueue<>());
+    }
+
+    private Write nextWrite(TopicPartition tp) throws InterruptedException {
+        Write write = writes(tp).poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if(write == null) {
+            fail("No batch of " + tp + " was written within " + TIMEOUT_MS + " ms.");
+        }
+        return write;
+    }
+
+    /**
+     * Takes written offsets until progress taken so far is done.
+     */
+    private IngestPipeline.Progress awaitProgress(Predicate<IngestPipeline.Progress> done) throws InterruptedException {
+        Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+        Map<TopicPartition, Long> rewind = new HashMap<>();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            IngestPipeline.Progress taken = pipeline.takeWritten();
+            commit.putAll(taken.getCommit());
+            rewind.putAll(taken.getRewind());
+            IngestPipeline.Progress progress = new IngestPipeline.Progress(commit, rewind);
+            if(done.test(progress)) {
+                return progress;
+            }
+            Thread.sleep(10);
+        }
+        return fail("Expected progress was not taken within " + TIMEOUT_MS + " ms.");
+    }
+
+    private void awaitRecordsInFlight(long records) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (pipeline.getStats().getRecordsInFlight() != records) {
+            if(System.currentTimeMillis() >= deadline) {
+                fail("Lanes did not get to " + records + " records in flight within " + TIMEOUT_MS + " ms.");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void add(TopicPartition tp, long fromOffset, int count) {
+        for (long offset = fromOffset; offset < fromOffset + count; offset++) {
+            pipeline.add(new ConsumerRecord<>(tp.topic(), tp.partition(), offset, new byte[0], new byte[0]));
+        }
+    }
+
+    private static Map.Entry<TopicPartition, OffsetAndMetadata> commit(TopicPartition tp, long offset) {
+        return entry(tp, new OffsetAndMetadata(offset));
+    }
+}
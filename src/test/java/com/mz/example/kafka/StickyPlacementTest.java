@@ -0,0 +1,111 @@
+package com.mz.example.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor.Subscription;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StickyPlacementTest {
+
+    private static final String EVENTS = "events";
+    private static final String ORDERS = "orders";
+
+    private final Map<String, Integer> partitionsPerTopic = new HashMap<>();
+
+    @Test
+    void partitionsAreBalancedWithinOnePerMember() {
+        partitionsPerTopic.put(EVENTS, 7);
+        partitionsPerTopic.put(ORDERS, 4);
+        //c owned everything before
+        Map<TopicPartition, String> owners = new HashMap<>();
+        allPartitions().forEach(tp -> owners.put(tp, "c"));
+
+        StickyPlacement.Result result = StickyPlacement.place(partitionsPerTopic, members("a", "b", "c"), owners);
+
+        assertThat(result.getAssignment().values()).extracting(List::size).containsOnly(3, 4);
+        assertThat(assigned(result)).containsExactlyInAnyOrderElementsOf(allPartitions());
+        assertThat(result.getAssignment().get("c")).hasSize(4);
+        assertThat(result.getMoved()).isEqualTo(7);
+    }
+
+    @Test
+    void addedMemberTakesOnlyPartitionsNeededForBalance() {
+        partitionsPerTopic.put(EVENTS, 6);
+        StickyPlacement.Result before = StickyPlacement.place(partitionsPerTopic, members("a", "b"),
+                Collections.emptyMap());
+
+        StickyPlacement.Result after = StickyPlacement.place(partitionsPerTopic, members("a", "b", "c"),
+                owners(before));
+
+        assertThat(after.getAssignment().values()).extracting(List::size).containsOnly(2);
+        assertThat(before.getAssignment().get("a")).containsAll(after.getAssignment().get("a"));
+        assertThat(before.getAssignment().get("b")).containsAll(after.getAssignment().get("b"));
+        assertThat(after.getMoved()).isEqualTo(2);
+    }
+
+    @Test
+    void partitionsOfRemovedMemberAreTheOnlyOnesMoved() {
+        partitionsPerTopic.put(EVENTS, 9);
+        StickyPlacement.Result before = StickyPlacement.place(partitionsPerTopic, members("a", "b", "c"),
+                Collections.emptyMap());
+
+        StickyPlacement.Result after = StickyPlacement.place(partitionsPerTopic, members("a", "b"), owners(before));
+
+        assertThat(after.getAssignment().values()).extracting(List::size).containsOnly(4, 5);
+        assertThat(after.getAssignment().get("a")).containsAll(before.getAssignment().get("a"));
+        assertThat(after.getAssignment().get("b")).containsAll(before.getAssignment().get("b"));
+        assertThat(after.getMoved()).isEqualTo(3);
+    }
+
+    @Test
+    void partitionIsNotKeptByOwnerNoLongerSubscribedToItsTopic() {
+        partitionsPerTopic.put(EVENTS, 2);
+        partitionsPerTopic.put(ORDERS, 2);
+        Map<String, Subscription> members = new HashMap<>();
+        members.put("a", new Subscription(Collections.singletonList(EVENTS)));
+        members.put("b", new Subscription(Arrays.asList(EVENTS, ORDERS)));
+        Map<TopicPartition, String> owners = new HashMap<>();
+        owners.put(new TopicPartition(ORDERS, 0), "a");
+        owners.put(new TopicPartition(ORDERS, 1), "a");
+
+        StickyPlacement.Result result = StickyPlacement.place(partitionsPerTopic, members, owners);
+
+        assertThat(result.getAssignment().get("a")).extracting(TopicPartition::topic).containsOnly(EVENTS);
+        assertThat(result.getAssignment().get("b"))
+                .contains(new TopicPartition(ORDERS, 0), new TopicPartition(ORDERS, 1));
+        assertThat(result.getMoved()).isEqualTo(2);
+    }
+
+    private Map<String, Subscription> members(String... memberIds) {
+        Map<String, Subscription> ret = new HashMap<>();
+        for (String memberId : memberIds) {
+            ret.put(memberId, new Subscription(new ArrayList<>(partitionsPerTopic.keySet())));
+        }
+        return ret;
+    }
+
+    private List<TopicPartition> allPartitions() {
+        List<TopicPartition> ret = new ArrayList<>();
+        partitionsPerTopic.forEach((topic, partitions) -> {
+            for (int partition = 0; partition < partitions; partition++) {
+                ret.add(new TopicPartition(topic, partition));
+            }
+        });
+        return ret;
+    }
+
+    private static List<TopicPartition> assigned(StickyPlacement.Result result) {
+        List<TopicPartition> ret = new ArrayList<>();
+        result.getAssignment().values().forEach(ret::addAll);
+        return ret;
+    }
+
+    private static Map<TopicPartition, String> owners(StickyPlacement.Result result) {
+        Map<TopicPartition, String> ret = new HashMap<>();
+        result.getAssignment().forEach((memberId, partitions) -> partitions.forEach(tp -> ret.put(tp, memberId)));
+        return ret;
+    }
+}
@@ -0,0 +1,147 @@
+package com.mz.example.kafka;
+
+import com.mz.example.neo4j.Neo4jRoutingTable;
+import com.mz.example.neo4j.Neo4jService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor.Assignment;
+import org.apache.kafka.clients.consumer.ConsumerPartitionAssignor.Subscription;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.types.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Assignment leader and members sharing one neo4j data center. User data of each member is produced by its own
+ * assignor, except for version 0 user data which is written by hand.
+ */
+class StickyRegionalAssignorTest {
+
+    private static final String TOPIC = "events";
+    private static final String LEADER = "dc1:7687";
+    //version 0 user data as written before versioning was introduced
+    private static final Schema TOPIC_PARTITIONS_V0 = new Schema(
+            new Field("topic", Type.STRING),
+            new Field("partitions", new ArrayOf(Type.INT32)));
+    private static final Schema USER_DATA_V0 = new Schema(
+            new Field("eligible-neo4j-leaders", new ArrayOf(Type.STRING)),
+            new Field("owned-partitions", new ArrayOf(TOPIC_PARTITIONS_V0)),
+            new Field("generation", Type.INT32));
+
+    private final Map<String, Integer> partitionsPerTopic = Collections.singletonMap(TOPIC, 4);
+    private final List<StickyRegionalAssignor> assignors = new ArrayList<>();
+    private StickyRegionalAssignor groupLeader;
+
+    @BeforeEach
+    void setup() {
+        groupLeader = assignor();
+    }
+
+    @AfterEach
+    void close() {
+        assignors.forEach(StickyRegionalAssignor::close);
+    }
+
+    @Test
+    void ownersKeepTheirPartitions() {
+        Map<String, Subscription> subscriptions = new HashMap<>();
+        subscriptions.put("a", subscription(partitions(0, 1), 3));
+        subscriptions.put("b", subscription(partitions(2, 3), 3));
+
+        Map<String, List<TopicPartition>> assignment = groupLeader.assign(partitionsPerTopic, subscriptions);
+
+        assertThat(assignment.get("a")).containsExactlyInAnyOrderElementsOf(partitions(0, 1));
+        assertThat(assignment.get("b")).containsExactlyInAnyOrderElementsOf(partitions(2, 3));
+        assertThat(groupLeader.getLastMovedPartitions()).isZero();
+    }
+
+    @Test
+    void claimFromStaleGenerationIsIgnored() {
+        Map<String, Subscription> subscriptions = new HashMap<>();
+        subscriptions.put("a", subscription(partitions(0, 1), 4));
+        //b did not learn it lost partitions 0 and 1 in generation 4
+        subscriptions.put("b", subscription(partitions(0, 1, 2, 3), 3));
+
+        Map<String, List<TopicPartition>> assignment = groupLeader.assign(partitionsPerTopic, subscriptions);
+
+        assertThat(assignment.get("a")).containsExactlyInAnyOrderElementsOf(partitions(0, 1));
+        assertThat(assignment.get("b")).containsExactlyInAnyOrderElementsOf(partitions(2, 3));
+        assertThat(groupLeader.getLastMovedPartitions()).isZero();
+    }
+
+    @Test
+    void versionZeroUserDataIsDecoded() {
+        Map<String, Subscription> subscriptions = new HashMap<>();
+        subscriptions.put("a", new Subscription(Collections.singletonList(TOPIC), userDataV0(partitions(0, 1), 3)));
+        subscriptions.put("b", subscription(partitions(2, 3), 3));
+
+        Map<String, List<TopicPartition>> assignment = groupLeader.assign(partitionsPerTopic, subscriptions);
+
+        //a is eligible and keeps partitions it owned
+        assertThat(assignment.get("a")).containsExactlyInAnyOrderElementsOf(partitions(0, 1));
+        assertThat(assignment.get("b")).containsExactlyInAnyOrderElementsOf(partitions(2, 3));
+        assertThat(groupLeader.getLastMovedPartitions()).isZero();
+    }
+
+    private StickyRegionalAssignor assignor() {
+        Neo4jService neo4jService = mock(Neo4jService.class);
+        Neo4jRoutingTable routingTable = new Neo4jRoutingTable(300, Arrays.asList(
+                new Neo4jRoutingTable.Server(Collections.singletonList(LEADER), Neo4jRoutingTable.WRITE_ROLE),
+                new Neo4jRoutingTable.Server(Arrays.asList(LEADER, "dc2:7687"), Neo4jRoutingTable.ROUTE_ROLE)));
+        when(neo4jService.getFreshRoutingTable(anyString(), anyString())).thenReturn(routingTable);
+        when(neo4jService.getCachedRoutingTable(anyString(), anyString())).thenReturn(routingTable);
+        when(neo4jService.getSameDCServers()).thenReturn(Collections.singletonList(LEADER));
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(KafkaConfiguration.NEO4J_SERVICE_PROPERTY, neo4jService);
+        configs.put(KafkaConfiguration.METER_REGISTRY_PROPERTY, new SimpleMeterRegistry());
+        configs.put(KafkaConfiguration.TOPIC_DATABASES_PROPERTY,
+                new TopicDatabases(Collections.singletonMap(TOPIC, "neo4j")));
+        configs.put(KafkaConfiguration.LATENCY_PROBE_INTERVAL_MS_PROPERTY, 0);
+        StickyRegionalAssignor assignor = new StickyRegionalAssignor();
+        assignor.configure(configs);
+        assignors.add(assignor);
+        return assignor;
+    }
+
+    /**
+     * @return subscription of member that was assigned given partitions in given generation
+     */
+    private Subscription subscription(List<TopicPartition> owned, int generation) {
+        StickyRegionalAssignor member = assignor();
+        member.onAssignment(new Assignment(owned),
+                new ConsumerGroupMetadata("group", generation, "member", Optional.empty()));
+        List<String> topics = Collections.singletonList(TOPIC);
+        return new Subscription(topics, member.subscriptionUserData(new HashSet<>(topics)));
+    }
+
+    private static ByteBuffer userDataV0(List<TopicPartition> owned, int generation) {
+        Struct topicPartitions = new Struct(TOPIC_PARTITIONS_V0);
+        topicPartitions.set("topic", TOPIC);
+        topicPartitions.set("partitions", owned.stream().map(TopicPartition::partition).toArray());
+        Struct struct = new Struct(USER_DATA_V0);
+        struct.set("eligible-neo4j-leaders", new Object[]{LEADER});
+        struct.set("owned-partitions", new Object[]{topicPartitions});
+        struct.set("generation", generation);
+        ByteBuffer buffer = ByteBuffer.allocate(USER_DATA_V0.sizeOf(struct));
+        USER_DATA_V0.write(buffer, struct);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<TopicPartition> partitions(int... partitions) {
+        List<TopicPartition> ret = new ArrayList<>();
+        for (int partition : partitions) {
+            ret.add(new TopicPartition(TOPIC, partition));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,160 @@
+package com.mz.example.neo4j;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.AsyncTransaction;
+import org.neo4j.driver.async.AsyncTransactionWork;
+import org.neo4j.driver.internal.InternalBookmark;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Read your writes: every mocked write returns its own bookmark, tests check which bookmarks read sessions wait for.
+ */
+class Neo4jSessionsBookmarksTest {
+
+    private static final String OTHER_DATABASE = "other";
+
+    private final AtomicInteger bookmarkSequence = new AtomicInteger();
+    private final List<SessionConfig> readConfigs = new CopyOnWriteArrayList<>();
+    private Neo4jSessions neo4jSessions;
+
+    @BeforeEach
+    void setup() {
+        Driver driver = mock(Driver.class);
+        when(driver.session(any(SessionConfig.class))).thenAnswer(invocation ->
+                syncSession(invocation.getArgument(0)));
+        when(driver.asyncSession(any(SessionConfig.class))).thenAnswer(invocation ->
+                asyncSession(invocation.getArgument(0)));
+        neo4jSessions = new Neo4jSessions();
+        ReflectionTestUtils.setField(neo4jSessions, "neo4jDriver", driver);
+        ReflectionTestUtils.setField(neo4jSessions, "readYourWrites", true);
+    }
+
+    @Test
+    void readWaitsForBookmarkOfPrecedingWrite() {
+        neo4jSessions.write(tx -> null);
+        Bookmark syncWrite = lastWriteBookmark();
+        neo4jSessions.read(tx -> null);
+        assertThat(lastReadConfig().bookmarks()).contains(syncWrite);
+
+        neo4jSessions.writeAsync(tx -> CompletableFuture.completedFuture(null)).toCompletableFuture().join();
+        Bookmark asyncWrite = lastWriteBookmark();
+        neo4jSessions.readAsync(tx -> CompletableFuture.completedFuture(null)).toCompletableFuture().join();
+        assertThat(lastReadConfig().bookmarks()).contains(syncWrite, asyncWrite);
+    }
+
+    @Test
+    void readAfterConcurrentWritesCarriesLatestBookmarks() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int write = 0; write < 400; write++) {
+                boolean sync = write % 2 == 0;
+                futures.add(executor.submit(() -> sync
+                        ? neo4jSessions.write(tx -> null)
+                        : neo4jSessions.writeAsync(tx -> CompletableFuture.completedFuture(null))
+                                .toCompletableFuture().join()));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<Bookmark> latest = neo4jSessions.getBookmarks(Neo4jConfiguration.NEO4J_DATABASE_NAME);
+        assertThat(latest).hasSize(8).doesNotHaveDuplicates();
+
+        neo4jSessions.read(tx -> null);
+        assertThat(lastReadConfig().bookmarks()).containsExactlyInAnyOrderElementsOf(latest);
+    }
+
+    @Test
+    void readWaitsOnlyForWritesOfItsDatabase() {
+        neo4jSessions.writeAsync(OTHER_DATABASE, tx -> CompletableFuture.completedFuture(null))
+                .toCompletableFuture().join();
+
+        neo4jSessions.read(tx -> null);
+
+        assertThat(lastReadConfig().bookmarks()).isNullOrEmpty();
+        assertThat(neo4jSessions.getBookmarks(OTHER_DATABASE)).containsExactly(lastWriteBookmark());
+    }
+
+    @Test
+    void readDoesNotWaitForBookmarksWhenReadYourWritesIsDisabled() {
+        ReflectionTestUtils.setField(neo4jSessions, "readYourWrites", false);
+        neo4jSessions.write(tx -> null);
+        neo4jSessions.read(tx -> null);
+        assertThat(lastReadConfig().bookmarks()).isNullOrEmpty();
+    }
+
+    @Test
+    void readWithoutBookmarksDoesNotWaitForPrecedingWrite() {
+        neo4jSessions.write(tx -> null);
+
+        neo4jSessions.readWithoutBookmarks(tx -> null);
+
+        assertThat(lastReadConfig().bookmarks()).isNullOrEmpty();
+        assertThat(lastReadConfig().defaultAccessMode()).isEqualTo(AccessMode.READ);
+        assertThat(neo4jSessions.getBookmarks(Neo4jConfiguration.NEO4J_DATABASE_NAME)).hasSize(1);
+    }
+
+    private Session syncSession(SessionConfig config) {
+        trackRead(config);
+        Session session = mock(Session.class);
+        Bookmark[] bookmark = new Bookmark[1];
+        when(session.readTransaction(any())).thenAnswer(invocation ->
+                ((TransactionWork<?>) invocation.getArgument(0)).execute(mock(Transaction.class)));
+        when(session.writeTransaction(any())).thenAnswer(invocation -> {
+            Object result = ((TransactionWork<?>) invocation.getArgument(0)).execute(mock(Transaction.class));
+            bookmark[0] = nextBookmark();
+            return result;
+        });
+        when(session.lastBookmark()).thenAnswer(invocation -> bookmark[0]);
+        return session;
+    }
+
+    private AsyncSession asyncSession(SessionConfig config) {
+        trackRead(config);
+        AsyncSession session = mock(AsyncSession.class);
+        Bookmark[] bookmark = new Bookmark[1];
+        when(session.readTransactionAsync(any())).thenAnswer(invocation ->
+                ((AsyncTransactionWork<?>) invocation.getArgument(0)).execute(mock(AsyncTransaction.class)));
+        when(session.writeTransactionAsync(any())).thenAnswer(invocation -> {
+            Object result = ((AsyncTransactionWork<?>) invocation.getArgument(0)).execute(mock(AsyncTransaction.class));
+            bookmark[0] = nextBookmark();
+            return result;
+        });
+        when(session.lastBookmark()).thenAnswer(invocation -> bookmark[0]);
+        when(session.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        return session;
+    }
+
+    private void trackRead(SessionConfig config) {
+        if(config.defaultAccessMode() == AccessMode.READ) {
+            readConfigs.add(config);
+        }
+    }
+
+    private Bookmark nextBookmark() {
+        return InternalBookmark.parse("bookmark-" + bookmarkSequence.incrementAndGet());
+    }
+
+    private Bookmark lastWriteBookmark() {
+        return InternalBookmark.parse("bookmark-" + bookmarkSequence.get());
+    }
+
+    private SessionConfig lastReadConfig() {
+        return readConfigs.get(readConfigs.size() - 1);
+    }
+}
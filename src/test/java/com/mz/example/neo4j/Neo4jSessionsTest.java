@@ -0,0 +1,248 @@
+package com.mz.example.neo4j;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.AsyncTransaction;
+import org.neo4j.driver.async.AsyncTransactionWork;
+import org.neo4j.driver.internal.InternalBookmark;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs sync and async units of work against mocked driver from many threads. Each mocked session fails the test when
+ * it is used by more than one thread or after it was closed. Bookmarks are covered by
+ * {@link Neo4jSessionsBookmarksTest}.
+ */
+class Neo4jSessionsTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 50;
+
+    private final AtomicInteger bookmarkSequence = new AtomicInteger();
+    private final List<TrackedSession> sessions = new CopyOnWriteArrayList<>();
+    private final ExecutorService driverThreads = Executors.newFixedThreadPool(4);
+    private final AtomicInteger transactionsRunning = new AtomicInteger();
+    private final AtomicInteger peakTransactionsRunning = new AtomicInteger();
+    private Neo4jSessions neo4jSessions;
+    //when set, transactions wait for it
+    private volatile CountDownLatch holdTransactions;
+
+    @BeforeEach
+    void setup() {
+        Driver driver = mock(Driver.class);
+        when(driver.session(any(SessionConfig.class))).thenAnswer(invocation ->
+                syncSession(invocation.getArgument(0)));
+        when(driver.asyncSession(any(SessionConfig.class))).thenAnswer(invocation ->
+                asyncSession(invocation.getArgument(0)));
+        neo4jSessions = new Neo4jSessions();
+        ReflectionTestUtils.setField(neo4jSessions, "neo4jDriver", driver);
+        ReflectionTestUtils.setField(neo4jSessions, "readYourWrites", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        driverThreads.shutdownNow();
+    }
+
+    @Test
+    void concurrentOperationsDoNotShareSessions() throws Exception {
+        runConcurrently(THREADS, thread -> {
+            for (int operation = 0; operation < OPERATIONS_PER_THREAD; operation++) {
+                switch ((thread + operation) % 4) {
+                    case 0:
+                        neo4jSessions.write(tx -> null);
+                        break;
+                    case 1:
+                        neo4jSessions.read(tx -> null);
+                        break;
+                    case 2:
+                        neo4jSessions.writeAsync(tx -> CompletableFuture.completedFuture(null))
+                                .toCompletableFuture().join();
+                        break;
+                    default:
+                        neo4jSessions.readAsync(tx -> CompletableFuture.completedFuture(null))
+                                .toCompletableFuture().join();
+                }
+            }
+        });
+
+        assertThat(sessions).hasSize(THREADS * OPERATIONS_PER_THREAD);
+        sessions.forEach(session -> {
+            assertThat(session.failure.get()).isNull();
+            assertThat(session.closed.get()).isEqualTo(1);
+        });
+        assertThat(sessions.stream().filter(session -> session.accessMode == AccessMode.WRITE).count())
+                .isEqualTo(THREADS * OPERATIONS_PER_THREAD / 2);
+    }
+
+    @Test
+    void transactionsOfAllThreadsRunAtTheSameTime() throws Exception {
+        holdTransactions = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                //async ones run on driver threads, there are enough of them for all
+                boolean async = thread % 2 == 1;
+                futures.add(executor.submit(() -> async
+                        ? neo4jSessions.readAsync(tx -> CompletableFuture.completedFuture(null)).toCompletableFuture()
+                                .join()
+                        : neo4jSessions.read(tx -> null)));
+            }
+            //shared session would let only one transaction in at a time
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (transactionsRunning.get() < THREADS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat(transactionsRunning.get()).isEqualTo(THREADS);
+
+            holdTransactions.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            holdTransactions.countDown();
+            executor.shutdownNow();
+        }
+        assertThat(peakTransactionsRunning.get()).isEqualTo(THREADS);
+        assertThat(sessions).hasSize(THREADS);
+        sessions.forEach(session -> {
+            assertThat(session.failure.get()).isNull();
+            assertThat(session.closed.get()).isEqualTo(1);
+        });
+    }
+
+    private Session syncSession(SessionConfig config) {
+        TrackedSession tracked = track(config);
+        Session session = mock(Session.class);
+        when(session.readTransaction(any())).thenAnswer(invocation -> {
+            tracked.use();
+            return ((TransactionWork<?>) invocation.getArgument(0)).execute(mock(Transaction.class));
+        });
+        when(session.writeTransaction(any())).thenAnswer(invocation -> {
+            tracked.use();
+            Object result = ((TransactionWork<?>) invocation.getArgument(0)).execute(mock(Transaction.class));
+            tracked.bookmark = nextBookmark();
+            return result;
+        });
+        when(session.lastBookmark()).thenAnswer(invocation -> tracked.bookmark);
+        doAnswer(invocation -> tracked.closed.incrementAndGet()).when(session).close();
+        return session;
+    }
+
+    private AsyncSession asyncSession(SessionConfig config) {
+        TrackedSession tracked = track(config);
+        AsyncSession session = mock(AsyncSession.class);
+        when(session.readTransactionAsync(any())).thenAnswer(invocation ->
+                runAsync(tracked, invocation.getArgument(0), false));
+        when(session.writeTransactionAsync(any())).thenAnswer(invocation ->
+                runAsync(tracked, invocation.getArgument(0), true));
+        when(session.lastBookmark()).thenAnswer(invocation -> tracked.bookmark);
+        when(session.closeAsync()).thenAnswer(invocation -> {
+            tracked.closed.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        return session;
+    }
+
+    /**
+     * Completes on driver thread, like driver does, so session is used by different thread than one which opened it.
+     */
+    private CompletionStage<Object> runAsync(TrackedSession tracked, AsyncTransactionWork<CompletionStage<Object>> work,
+                                             boolean write) {
+        return CompletableFuture.supplyAsync(() -> {
+            tracked.use();
+            Object result = work.execute(mock(AsyncTransaction.class)).toCompletableFuture().join();
+            if(write) {
+                tracked.bookmark = nextBookmark();
+            }
+            return result;
+        }, driverThreads);
+    }
+
+    private TrackedSession track(SessionConfig config) {
+        TrackedSession tracked = new TrackedSession(config.defaultAccessMode());
+        sessions.add(tracked);
+        return tracked;
+    }
+
+    private Bookmark nextBookmark() {
+        return InternalBookmark.parse("bookmark-" + bookmarkSequence.incrementAndGet());
+    }
+
+    private void runConcurrently(int threads, ThreadWork work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    work.run(id);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface ThreadWork {
+        void run(int thread);
+    }
+
+    private class TrackedSession {
+        private final AccessMode accessMode;
+        private final AtomicReference<Thread> owner = new AtomicReference<>();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+        private final AtomicReference<String> failure = new AtomicReference<>();
+        private volatile Bookmark bookmark;
+
+        private TrackedSession(AccessMode accessMode) {
+            this.accessMode = accessMode;
+        }
+
+        private void use() {
+            if(!owner.compareAndSet(null, Thread.currentThread()) && owner.get() != Thread.currentThread()) {
+                failure.compareAndSet(null, "used by " + owner.get().getName() + " and "
+                        + Thread.currentThread().getName());
+            }
+            if(inUse.incrementAndGet() > 1) {
+                failure.compareAndSet(null, "used concurrently");
+            }
+            if(closed.get() > 0) {
+                failure.compareAndSet(null, "used after close");
+            }
+            peakTransactionsRunning.accumulateAndGet(transactionsRunning.incrementAndGet(), Math::max);
+            try {
+                CountDownLatch hold = holdTransactions;
+                if(hold != null) {
+                    hold.await();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                transactionsRunning.decrementAndGet();
+                inUse.decrementAndGet();
+            }
+        }
+    }
+}
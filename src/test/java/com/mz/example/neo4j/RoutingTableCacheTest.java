@@ -0,0 +1,53 @@
+package com.mz.example.neo4j;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoutingTableCacheTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private final RoutingTableCache cache = new RoutingTableCache((database, policy) -> {
+        queries.incrementAndGet();
+        return new Neo4jRoutingTable(300, Arrays.asList(
+                new Neo4jRoutingTable.Server(Collections.singletonList("a:1"), Neo4jRoutingTable.WRITE_ROLE),
+                new Neo4jRoutingTable.Server(Arrays.asList("a:1", "b:1"), Neo4jRoutingTable.ROUTE_ROLE)));
+    }, 0.8, Duration.ofMinutes(10));
+
+    @AfterEach
+    void close() {
+        cache.close();
+    }
+
+    @Test
+    void cachedEntryIsHit() {
+        cache.get("neo4j", "policy");
+        cache.get("neo4j", "policy");
+
+        RoutingTableCache.Stats stats = cache.getStats();
+        assertThat(queries).hasValue(1);
+        assertThat(stats.getMisses()).isEqualTo(1);
+        assertThat(stats.getHits()).isEqualTo(1);
+        assertThat(stats.getReloads()).isZero();
+    }
+
+    @Test
+    void reloadIsCounted() {
+        cache.get("neo4j", "policy");
+        cache.reload("neo4j", "policy");
+        cache.reload("orders", "policy");
+
+        RoutingTableCache.Stats stats = cache.getStats();
+        assertThat(queries).hasValue(3);
+        assertThat(stats.getReloads()).isEqualTo(2);
+        assertThat(stats.getMisses()).isEqualTo(1);
+        assertThat(stats.getHits()).isZero();
+        assertThat(stats.getEntries()).isEqualTo(2);
+    }
+}
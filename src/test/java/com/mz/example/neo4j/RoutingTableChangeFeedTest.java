@@ -0,0 +1,78 @@
+package com.mz.example.neo4j;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Drives refresh loop by hand with mocked subscriber and counts events it was sent.
+ */
+class RoutingTableChangeFeedTest {
+
+    private final Neo4jService neo4jService = mock(Neo4jService.class);
+    private final SseEmitter subscriber = mock(SseEmitter.class);
+    private RoutingTableChangeFeed changeFeed;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        changeFeed = new RoutingTableChangeFeed();
+        ReflectionTestUtils.setField(changeFeed, "neo4jService", neo4jService);
+        ((List<SseEmitter>) ReflectionTestUtils.getField(changeFeed, "subscribers")).add(subscriber);
+    }
+
+    @Test
+    void unchangedRoutingTableIsNotPushed() throws Exception {
+        when(neo4jService.getCurrentRoutingTableViaNeo4jQuery()).thenReturn(routingTable("a:1"));
+
+        for (int refresh = 0; refresh < 5; refresh++) {
+            refresh();
+        }
+
+        //initial routing table only
+        verify(subscriber, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void leaderChangeIsPushed() throws Exception {
+        when(neo4jService.getCurrentRoutingTableViaNeo4jQuery())
+                .thenReturn(routingTable("a:1"), routingTable("a:1"), routingTable("b:1"), routingTable("b:1"));
+
+        for (int refresh = 0; refresh < 4; refresh++) {
+            refresh();
+        }
+
+        verify(subscriber, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void renewalIsPushedOncePerTtl() throws Exception {
+        when(neo4jService.getCurrentRoutingTableViaNeo4jQuery()).thenReturn(routingTable("a:1"));
+        refresh();
+
+        //ttl of 300s ran out
+        ReflectionTestUtils.setField(changeFeed, "renewedAt", System.currentTimeMillis() - 300_000);
+        refresh();
+        refresh();
+
+        verify(subscriber, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    private void refresh() {
+        ReflectionTestUtils.invokeMethod(changeFeed, "refresh");
+    }
+
+    private static Neo4jRoutingTable routingTable(String leader) {
+        return new Neo4jRoutingTable(300, Arrays.asList(
+                new Neo4jRoutingTable.Server(Collections.singletonList(leader), Neo4jRoutingTable.WRITE_ROLE),
+                new Neo4jRoutingTable.Server(Arrays.asList("a:1", "b:1"), Neo4jRoutingTable.ROUTE_ROLE)));
+    }
+}
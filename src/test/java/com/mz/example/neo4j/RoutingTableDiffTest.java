@@ -0,0 +1,60 @@
+package com.mz.example.neo4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoutingTableDiffTest {
+
+    @Test
+    void unchangedRoutingTableHasNoChanges() {
+        RoutingTableDiff diff = RoutingTableDiff.between(routingTable(300, "a:1", "b:1"),
+                routingTable(300, "a:1", "b:1"));
+
+        assertThat(diff.getChanges()).isEmpty();
+        assertThat(diff.hasChanges()).isFalse();
+    }
+
+    @Test
+    void renewalIsReportedOnlyWhenTtlRanOut() {
+        RoutingTableDiff diff = RoutingTableDiff.between(routingTable(300, "a:1", "b:1"),
+                routingTable(300, "a:1", "b:1"), true);
+
+        assertThat(diff.getChanges()).containsExactly(RoutingTableDiff.Change.RENEWED);
+        assertThat(diff.hasChanges()).isTrue();
+    }
+
+    @Test
+    void ttlValueChangeIsReportedSeparatelyFromRenewal() {
+        RoutingTableDiff diff = RoutingTableDiff.between(routingTable(300, "a:1", "b:1"),
+                routingTable(60, "a:1", "b:1"));
+
+        assertThat(diff.getChanges()).containsExactly(RoutingTableDiff.Change.TTL);
+        assertThat(diff.getPreviousTtl()).isEqualTo(300);
+        assertThat(diff.getTtl()).isEqualTo(60);
+    }
+
+    @Test
+    void leaderAndReadersChanges() {
+        RoutingTableDiff diff = RoutingTableDiff.between(routingTable(300, "a:1", "b:1"),
+                routingTable(300, "b:1", "a:1"));
+
+        assertThat(diff.getChanges()).containsExactly(RoutingTableDiff.Change.LEADER, RoutingTableDiff.Change.READERS);
+        assertThat(diff.getPreviousLeader()).isEqualTo("a:1");
+        assertThat(diff.getLeader()).isEqualTo("b:1");
+        assertThat(diff.getAddedReaders()).containsExactly("a:1");
+        assertThat(diff.getRemovedReaders()).containsExactly("b:1");
+    }
+
+    private static Neo4jRoutingTable routingTable(int ttl, String leader, String reader) {
+        List<String> routers = Arrays.asList("a:1", "b:1");
+        return new Neo4jRoutingTable(ttl, Arrays.asList(
+                new Neo4jRoutingTable.Server(Collections.singletonList(leader), Neo4jRoutingTable.WRITE_ROLE),
+                new Neo4jRoutingTable.Server(Collections.singletonList(reader), Neo4jRoutingTable.READ_ROLE),
+                new Neo4jRoutingTable.Server(routers, Neo4jRoutingTable.ROUTE_ROLE)));
+    }
+}
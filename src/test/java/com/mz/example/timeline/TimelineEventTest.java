@@ -0,0 +1,87 @@
+package com.mz.example.timeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimelineEventTest {
+
+    @Test
+    void encodedEventDecodesToSameValues() {
+        TimelineEvent event = new TimelineEvent(1600000000123L, TimelineEvent.Type.ROUTING_TABLE,
+                Arrays.asList("neo4j", "eu", 42, "core-1:7687", 300000L, "core-2:7687,core-3:7687", null));
+
+        TimelineEvent decoded = roundTrip(event);
+
+        assertThat(decoded.getTimestamp()).isEqualTo(1600000000123L);
+        assertThat(decoded.getType()).isEqualTo(TimelineEvent.Type.ROUTING_TABLE);
+        assertThat(decoded.getFields()).isEqualTo(event.getFields());
+        assertThat(decoded.getFields().get("version")).isEqualTo(42L);
+        assertThat(decoded.getFields().get("routers")).isNull();
+    }
+
+    @Test
+    void everyTypeRoundTrips() {
+        for (TimelineEvent.Type type : TimelineEvent.Type.values()) {
+            Object[] values = new Object[type.getFields().size()];
+            for (int field = 0; field < values.length; field++) {
+                values[field] = field % 3 == 0 ? (Object) (long) field : field % 3 == 1 ? "value-" + field : null;
+            }
+            TimelineEvent event = new TimelineEvent(1000L * type.ordinal(), type, Arrays.asList(values));
+
+            TimelineEvent decoded = roundTrip(event);
+
+            assertThat(decoded.getType()).isEqualTo(type);
+            assertThat(decoded.getTimestamp()).isEqualTo(event.getTimestamp());
+            assertThat(decoded.getFields()).isEqualTo(event.getFields());
+        }
+    }
+
+    @Test
+    void textIsEncodedAsUtf8() {
+        TimelineEvent event = new TimelineEvent(1, TimelineEvent.Type.PARTITION_PAUSED,
+                Arrays.asList("zdarzenia-\u017c\u00f3\u0142\u0107", 3, "lag > 1\u00b5s"));
+
+        assertThat(roundTrip(event).getFields()).containsEntry("topic", "zdarzenia-\u017c\u00f3\u0142\u0107")
+                .containsEntry("partition", 3L)
+                .containsEntry("reason", "lag > 1\u00b5s");
+    }
+
+    @Test
+    void textLongerThanLimitIsTruncated() {
+        String partitions = String.join("", Collections.nCopies(40000, "p"));
+        TimelineEvent event = new TimelineEvent(1, TimelineEvent.Type.PARTITIONS_ASSIGNED,
+                Collections.singletonList(partitions));
+
+        assertThat(roundTrip(event).text("partitions")).hasValue(partitions.substring(0, Short.MAX_VALUE));
+    }
+
+    @Test
+    void wrongNumberOfValuesIsRejected() {
+        List<Object> values = Arrays.asList("neo4j", "core-1:7687");
+        assertThatThrownBy(() -> new TimelineEvent(1, TimelineEvent.Type.LEADER_CHANGED, values))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void unknownTypeIsRejected() {
+        ByteBuffer buffer = ByteBuffer.wrap(new TimelineEvent(1, TimelineEvent.Type.PARTITIONS_LOST,
+                Collections.singletonList("events-0")).encode());
+        buffer.put(8, (byte) 100);
+
+        assertThatThrownBy(() -> TimelineEvent.decode(buffer)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static TimelineEvent roundTrip(TimelineEvent event) {
+        ByteBuffer buffer = ByteBuffer.wrap(event.encode());
+        TimelineEvent decoded = TimelineEvent.decode(buffer);
+        assertThat(buffer.hasRemaining()).isFalse();
+        return decoded;
+    }
+}
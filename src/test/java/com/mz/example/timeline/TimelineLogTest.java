@@ -0,0 +1,109 @@
+package com.mz.example.timeline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Writes events through writer thread to segments in temporary directory and reads them back.
+ */
+class TimelineLogTest {
+
+    private Path dir;
+    private TimelineLog timelineLog;
+
+    @BeforeEach
+    void setup() throws IOException {
+        dir = Files.createTempDirectory("timeline");
+        timelineLog = timelineLog();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        timelineLog.terminate();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Test
+    void replaysEventsOfAllSegmentsInOrder() throws Exception {
+        timelineLog.setup();
+        for (int partition = 0; partition < 100; partition++) {
+            timelineLog.record(TimelineEvent.Type.PARTITION_PAUSED, "events", partition, "backpressure");
+        }
+        timelineLog.terminate();
+
+        List<TimelineEvent> events = timelineLog.replay(0);
+
+        assertThat(segmentCount()).isGreaterThan(1);
+        assertThat(events).hasSize(100);
+        for (int partition = 0; partition < 100; partition++) {
+            assertThat(events.get(partition).getFields()).containsEntry("partition", (long) partition);
+        }
+        assertThat(timelineLog.getDropped()).isZero();
+    }
+
+    @Test
+    void replayStopsAtEndOfWrittenPartOfSegment() throws Exception {
+        timelineLog.setup();
+        timelineLog.record(TimelineEvent.Type.LEADER_CHANGED, "neo4j", "core-1:7687", "core-2:7687");
+        timelineLog.terminate();
+
+        List<TimelineEvent> events = timelineLog.replay(0);
+
+        assertThat(segmentCount()).isEqualTo(1);
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).text("leader")).hasValue("core-2:7687");
+    }
+
+    @Test
+    void replaySkipsEventsBeforeGivenTime() throws Exception {
+        timelineLog.setup();
+        timelineLog.record(TimelineEvent.Type.PARTITIONS_ASSIGNED, "events-0");
+        timelineLog.terminate();
+
+        assertThat(timelineLog.replay(System.currentTimeMillis() + 1000)).isEmpty();
+    }
+
+    @Test
+    void newSegmentIsStartedAfterRestart() throws Exception {
+        timelineLog.setup();
+        timelineLog.record(TimelineEvent.Type.PARTITIONS_ASSIGNED, "events-0");
+        timelineLog.terminate();
+        timelineLog = timelineLog();
+        timelineLog.setup();
+        timelineLog.record(TimelineEvent.Type.PARTITIONS_REVOKED, "events-0");
+        timelineLog.terminate();
+
+        assertThat(segmentCount()).isEqualTo(2);
+        assertThat(timelineLog.replay(0)).extracting(TimelineEvent::getType)
+                .containsExactly(TimelineEvent.Type.PARTITIONS_ASSIGNED, TimelineEvent.Type.PARTITIONS_REVOKED);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private TimelineLog timelineLog() {
+        TimelineLog timelineLog = new TimelineLog();
+        ReflectionTestUtils.setField(timelineLog, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(timelineLog, "enabled", true);
+        ReflectionTestUtils.setField(timelineLog, "dir", dir.toString());
+        ReflectionTestUtils.setField(timelineLog, "segmentSizeBytes", 1024);
+        ReflectionTestUtils.setField(timelineLog, "maxSegments", 100);
+        ReflectionTestUtils.setField(timelineLog, "queueCapacity", 1000);
+        return timelineLog;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mz.example.timeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.mz.example.timeline.TimelineEvent.Type.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimelineSummaryTest {
+
+    private final List<TimelineEvent> events = new ArrayList<>();
+
+    @Test
+    void leaderlessWindowEndsWhenLeaderIsElected() {
+        event(1000, LEADER_CHANGED, "neo4j", "core-1:7687", null);
+        event(1500, LEADER_CHANGED, "neo4j", null, null);
+        event(4000, LEADER_CHANGED, "neo4j", null, "core-2:7687");
+
+        TimelineSummary summary = TimelineSummary.of(events, 3, 10000);
+
+        assertThat(summary.getFrom()).isEqualTo(1000);
+        assertThat(summary.getTo()).isEqualTo(10000);
+        assertThat(summary.getDroppedEvents()).isEqualTo(3);
+        assertThat(summary.getEvents()).containsEntry(LEADER_CHANGED, 3L);
+        assertThat(summary.getLeaderlessWindows())
+                .containsExactly(new TimelineSummary.LeaderlessWindow("neo4j", 1000L, 4000L, 3000));
+    }
+
+    @Test
+    void openLeaderlessWindowLastsUntilNow() {
+        event(1000, LEADER_CHANGED, "neo4j", null, "core-1:7687");
+        event(2000, LEADER_CHANGED, "neo4j", "core-1:7687", null);
+        event(3000, LEADER_CHANGED, "other", "core-1:7687", null);
+        event(3500, LEADER_CHANGED, "other", null, "core-3:7687");
+
+        TimelineSummary summary = TimelineSummary.of(events, 0, 9000);
+
+        assertThat(summary.getLeaderlessWindows()).containsExactly(
+                new TimelineSummary.LeaderlessWindow("neo4j", 2000L, null, 7000),
+                new TimelineSummary.LeaderlessWindow("other", 3000L, 3500L, 500));
+    }
+
+    @Test
+    void convergenceMeasuresDecisionAndAssignmentAfterLeaderChange() {
+        event(1000, LEADER_CHANGED, "neo4j", "core-1:7687", "core-2:7687");
+        event(1200, ASSIGNMENT, "regional", "other", "core-2:7687", "ROUTING_TABLE", 3, 3, "events-0");
+        event(1300, PARTITIONS_ASSIGNED, "events-1");
+        event(1400, ASSIGNMENT, "regional", "neo4j", "core-1:7687", "ROUTING_TABLE", 3, 3, "events-0");
+        event(1600, ASSIGNMENT, "regional", "neo4j", "core-2:7687", "ROUTING_TABLE", 3, 1, "events-0");
+        event(1900, PARTITIONS_ASSIGNED, "events-0");
+
+        TimelineSummary summary = TimelineSummary.of(events, 0, 2000);
+
+        assertThat(summary.getConvergence()).containsExactly(
+                new TimelineSummary.Convergence("neo4j", "core-2:7687", 1000, 600L, 900L));
+    }
+
+    @Test
+    void convergenceIsIncompleteWhenLeaderChangesAgain() {
+        event(1000, LEADER_CHANGED, "neo4j", "core-1:7687", "core-2:7687");
+        event(1500, LEADER_CHANGED, "neo4j", "core-2:7687", null);
+        event(1600, ASSIGNMENT, "regional", "neo4j", "core-2:7687", "ROUTING_TABLE", 3, 1, "events-0");
+        event(1700, PARTITIONS_ASSIGNED, "events-0");
+
+        TimelineSummary summary = TimelineSummary.of(events, 0, 2000);
+
+        assertThat(summary.getConvergence()).containsExactly(
+                new TimelineSummary.Convergence("neo4j", "core-2:7687", 1000, null, null));
+    }
+
+    @Test
+    void emptyTimelineStartsNow() {
+        TimelineSummary summary = TimelineSummary.of(events, 0, 5000);
+
+        assertThat(summary.getFrom()).isEqualTo(5000);
+        assertThat(summary.getEvents()).isEmpty();
+        assertThat(summary.getLeaderlessWindows()).isEmpty();
+        assertThat(summary.getConvergence()).isEmpty();
+    }
+
+    private void event(long timestamp, TimelineEvent.Type type, Object... values) {
+        events.add(new TimelineEvent(timestamp, type, Arrays.asList(values)));
+    }
+}